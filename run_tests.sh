@@ -8,7 +8,9 @@ pushd $(dirname $0) > /dev/null
 
 ./codecleaver.sh < test/test.codecleaver > /dev/null
 
-if diff test/expected-results.txt out/actual-results.txt > out/results.diff ; then
+if diff test/expected-results.txt out/actual-results.txt > out/results.diff \
+    && diff test/expected-export.csv out/export.csv >> out/results.diff \
+    && diff test/expected-reduced.csv out/reduced.csv >> out/results.diff ; then
   echo Tests Passed.
 else
   echo Tests Failed. See out/results.diff for details.
@@ -0,0 +1,118 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of transitive closures of named sets and symbols. Entries are keyed by
+ * the operator, the name of the operand and the version of the named set, so changing a set makes
+ * its old entries unreachable. The least recently used entries are evicted once the estimated
+ * size of all entries exceeds a limit.
+ */
+final class ClosureCache {
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+  private long limit;
+  private long weight;
+
+  public ClosureCache(long limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * Returns the cached closure or null if there is none.
+   */
+  public Iterable<Id> get(UnaryOperator operator, String source, int version) {
+    Entry entry = entries.get(new Key(operator, source, version));
+    return entry == null ? null : entry.value;
+  }
+
+  /**
+   * Caches a closure whose estimated size is weight bytes.
+   */
+  public void put(UnaryOperator operator, String source, int version, Iterable<Id> value,
+      long weight) {
+    if (weight > limit) {
+      return;
+    }
+    Entry old = entries.put(new Key(operator, source, version), new Entry(value, weight));
+    if (old != null) {
+      this.weight -= old.weight;
+    }
+    this.weight += weight;
+    evict();
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void clear() {
+    entries.clear();
+    weight = 0;
+  }
+
+  /**
+   * Sets the maximum estimated size in bytes of all entries, evicting entries if needed.
+   */
+  public void setLimit(long limit) {
+    this.limit = limit;
+    evict();
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+    while (weight > limit && iterator.hasNext()) {
+      weight -= iterator.next().getValue().weight;
+      iterator.remove();
+    }
+  }
+
+  private static final class Entry {
+    public final Iterable<Id> value;
+    public final long weight;
+
+    public Entry(Iterable<Id> value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  private static final class Key {
+    private final UnaryOperator operator;
+    private final String source;
+    private final int version;
+
+    public Key(UnaryOperator operator, String source, int version) {
+      this.operator = operator;
+      this.source = source;
+      this.version = version;
+    }
+
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return operator == key.operator && version == key.version && source.equals(key.source);
+    }
+
+    @Override public int hashCode() {
+      return (operator.hashCode() * 31 + source.hashCode()) * 31 + version;
+    }
+  }
+}
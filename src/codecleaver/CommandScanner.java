@@ -15,7 +15,6 @@
 
 package codecleaver;
 
-import java.util.HashSet;
 
 public final class CommandScanner {
   private final ErrorReporter errorReporter;
@@ -75,6 +74,17 @@ public final class CommandScanner {
     return ExpressionEvaluator.eval(errorReporter, state, expression);
   }
 
+  /**
+   * Returns the next expression without evaluating it.
+   */
+  public Expression getExpression() {
+    Expression expression = new ExpressionParser(scanner, errorReporter).parseExpression();
+    if (hadError()) {
+      return null;
+    }
+    return expression;
+  }
+
   public Expression getStatement() {
     Expression expression = new ExpressionParser(scanner, errorReporter).parseStatementOrExpression();
     if (hadError()) {
@@ -83,22 +93,94 @@ public final class CommandScanner {
     return expression;
   }
 
-  public HashSet<Id> getMutableSet() {
-    IdentifierToken word = getMutableSetName();
+  public IdentifierToken getMutableSetName() {
+    IdentifierToken word = getWord("set");
     if (word == null) {
       return null;
     }
 
-    return state.getSet(word.value);
+    return getMutableSetName(word);
   }
 
-  public IdentifierToken getMutableSetName() {
-    IdentifierToken word = getWord("set");
+  public Integer getInteger(String errorMessage) {
+    return getInteger(errorMessage, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the next word as an integer from minimum to maximum. Reports an error if it is not.
+   */
+  public Integer getInteger(String errorMessage, int minimum, int maximum) {
+    IdentifierToken word = getWord(errorMessage);
     if (word == null) {
       return null;
     }
 
-    return getMutableSetName(word);
+    try {
+      int result = Integer.parseInt(word.value);
+      if (result >= minimum && result <= maximum) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to report the error
+    }
+    reportError(word, "Expected %s.", errorMessage);
+    return null;
+  }
+
+  /**
+   * Returns the next word as an integer from minimum to maximum if it is a number. Returns null
+   * without consuming anything if it is not.
+   */
+  public Integer getOptionalInteger(String errorMessage, int minimum, int maximum) {
+    Token token = peekToken();
+    if (token instanceof IdentifierToken && ((IdentifierToken) token).value.matches("[0-9]+")) {
+      return getInteger(errorMessage, minimum, maximum);
+    }
+    return null;
+  }
+
+  /**
+   * Returns true and consumes the next word if it is keyword.
+   */
+  public boolean getOptionalKeyword(String keyword) {
+    Token token = peekToken();
+    if (token instanceof IdentifierToken && ((IdentifierToken) token).value.equals(keyword)) {
+      nextToken();
+      return true;
+    }
+    return false;
+  }
+
+  public Granularity getGranularity() {
+    return getEnum(Granularity.class, "Expected packages or types.");
+  }
+
+  public Granularity getOptionalGranularity() {
+    return peekEnum(Granularity.class) ? getGranularity() : null;
+  }
+
+  /**
+   * Returns the next word as a degree if it is one of in, out, in* or out*. Returns null without
+   * consuming anything if it is not.
+   */
+  public Degree getOptionalDegree() {
+    Token token = peekToken();
+    if (token instanceof IdentifierToken) {
+      Degree result = Degree.fromKeyword(((IdentifierToken) token).value);
+      if (result != null) {
+        nextToken();
+      }
+      return result;
+    }
+    return null;
+  }
+
+  public ExportFormat getExportFormat() {
+    return getEnum(ExportFormat.class, "Expected dot, graphml, csv or bin.");
+  }
+
+  public DispatchMode getDispatchMode() {
+    return getEnum(DispatchMode.class, "Expected none, cha or rta.");
   }
 
   public String getHelpTopic() {
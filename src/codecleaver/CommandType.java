@@ -38,6 +38,28 @@ public enum CommandType implements HelpTopic {
         + "file."),
   writeList("file-name set-expression", 
       "Write the contents of set-expression to file-name."),
+  exportGraph("file-name dot|graphml|csv|bin [reduced] [packages|types] set-expression",
+      "Writes the symbols in set-expression and the dependencies between them to file-name. "
+        + "Each dependency is labelled with its kinds. With packages or types, writes the "
+        + "packages or types containing set-expression, and each dependency is weighted by the "
+        + "number of symbol level dependencies it summarizes. csv writes one dependency per "
+        + "line. bin writes the number of symbols and their names, then each dependency as the "
+        + "indices of its symbols, its kinds and its weight, to the end of the file. With "
+        + "reduced, writes only the essential dependencies. A dependency between symbols which "
+        + "are not in a common cycle is left out when a longer chain of dependencies also "
+        + "connects them, so every symbol still reaches the same symbols."),
+  jarMatrix("[direct|transitive] [file-name]",
+      "Displays the dependencies between every pair of open files. The files are numbered, then "
+        + "the row of file A shows in column B the number of dependencies from symbols in A to "
+        + "symbols in B. With transitive, shows the number of symbols in B which symbols in A "
+        + "depend on transitively, the same as 'size (<* A) ^ B' without packages. The whole "
+        + "matrix is computed in one pass. If file-name is given, writes the matrix to it as CSV "
+        + "instead."),
+  diff("file-name-before file-name-after [set-expression]",
+      "Compares two versions of a jar file. Each version is loaded on its own, apart from the "
+        + "open files, and symbols are matched by name. Displays the symbols and dependencies "
+        + "which were added and removed. If set-expression is given, it is evaluated in both "
+        + "versions and the symbols which the result depends on transitively are compared too."),
   readList("set-name file-name",
       "Reads the contents of a file-name previously written with writeList and assign the result "
         + "to set-name."),
@@ -45,6 +67,23 @@ public enum CommandType implements HelpTopic {
       "Change current directory."),
   pwd("",
       "Print current directory."),
+  cacheLimit("megabytes",
+      "Sets the memory used to remember the transitive closures of named sets and symbols, such "
+        + "as '<* set-name'. Remembered closures are discarded when the set changes or a file is "
+        + "opened or closed. The default is 64 megabytes. A limit of 0 disables the cache."),
+  parallelism("thread-count [frontier-size]",
+      "Sets the number of threads which expand large searches of the dependency graphs. A level "
+        + "of a search is expanded in parallel once it holds frontier-size symbols, 4096 by "
+        + "default. A thread-count of 1 searches on one thread. The default is the number of "
+        + "processors."),
+  dispatch("none|cha|rta",
+      "Sets how virtual calls are added to the dependency graph. With none, the default, a virtual "
+        + "call depends only on the method it resolves to. With cha (class hierarchy analysis) "
+        + "it also depends on the methods it may dispatch to in every concrete subclass. With "
+        + "rta (rapid type analysis) it only depends on the methods it may dispatch to in classes "
+        + "which are created by code reachable from EntryPoints. The added dependencies have the "
+        + "edge kind dispatch. The dependency graph is rebuilt, so run dispatch again after "
+        + "changing EntryPoints."),
 
   // change the symbol set
   open("jar-file-name",
@@ -81,18 +120,67 @@ public enum CommandType implements HelpTopic {
       "Displays a list of all files which have been openSymbol-ed."),
   list("set-expression",
       "Displays all symbols in the set expression."),
-  to("set-expression-to set-expression-from",
+  to("[packages|types] set-expression-to [set-expression-from]",
       "Displays all symbols which depend on symbols in set-expression-to. The output is grouped by "
-      + "minimum distance to a member in the 'to' set. Output stops when a member of "
-      + "set-expression-from is displayed."),
-  from("set-expression-from set-expression-to",
+      + "minimum distance to a member in the 'to' set. If set-expression-from is given, output "
+      + "stops after the first distance which contains a member of set-expression-from. With "
+      + "packages or types, displays the packages or types which depend on the packages or types "
+      + "containing set-expression-to."),
+  from("[packages|types] set-expression-from [set-expression-to]",
       "Displays all symbols which the set-expression-from symbols depend on. The output is grouped "
-      + "by minimum distance to the 'from' set. Output stops when a member of set-expression-to "
-      + "is displayed"),
+      + "by minimum distance to the 'from' set. If set-expression-to is given, output stops after "
+      + "the first distance which contains a member of set-expression-to. With packages or types, "
+      + "displays the packages or types which the packages or types containing "
+      + "set-expression-from depend on."),
   size("set-expression",
       "Displays the number of symbols in the set expression."),
   info("set-expression",
       "Displays detailed information on all symbols in a set."),
+  reaches("set-expression-from set-expression-to",
+      "Displays true if any symbol in set-expression-from depends transitively on a symbol in "
+        + "set-expression-to, otherwise false. Gives the same answer as 'size (<* from) ^ to' "
+        + "is not 0, but uses a precomputed index instead of computing the whole closure."),
+  why("set-expression-from set-expression-to",
+      "Displays a shortest chain of dependencies from a symbol in set-expression-from to a "
+        + "symbol in set-expression-to, one symbol per line. Each symbol depends directly on the "
+        + "next."),
+  cycles("packages|types [set-expression]",
+      "Displays the dependency cycles between packages or between types, largest first. A symbol "
+        + "depends on a package or type if it depends on any symbol contained in it. If "
+        + "set-expression is given, displays only the cycles containing the packages or types "
+        + "which contain set-expression."),
+  weight("set-expression",
+      "Displays the number of types in the set expression and the total size of their class "
+        + "files, and the total length of the byte code of the methods in the set expression. "
+        + "For example 'weight <* X' estimates the byte code which X depends on."),
+  impact("count [precision] set-expression",
+      "Displays the count symbols in the set expression with the most transitive dependencies. "
+        + "Each line shows the estimated number of symbols the symbol depends on transitively, "
+        + "the estimated number of symbols which depend on it transitively, and the symbol. Both "
+        + "counts include the symbol itself. The estimates for every symbol are computed "
+        + "together in one pass, which is much faster than 'size <* symbol' for each symbol. "
+        + "precision is from 4 to 16, default 10. Higher precisions are more accurate but use "
+        + "more memory. The error is about 1.04 / sqrt(2^precision), or 3 percent for precision "
+        + "10."),
+  top("count [in|out|in*|out*] [packages|types] set-expression",
+      "Displays the count symbols in the set expression with the most dependencies, with the "
+        + "number of dependencies of each. out, the default, counts the symbols each symbol "
+        + "depends on directly, and in counts the symbols which depend on it directly. in* and "
+        + "out* count transitive dependencies instead, estimated as for the impact command. With "
+        + "packages or types, ranks the packages or types containing the set expression, and "
+        + "direct counts are the number of symbol level dependencies between them."),
+  partition("count prefix set-expression",
+      "Splits the types containing set-expression into count parts with roughly equal numbers "
+        + "of types and few dependencies between parts, and assigns the types and their members "
+        + "to the sets prefix1 to prefixcount. If a set named prefixNPinned exists, its types "
+        + "are always put in part N. Displays the size of each part and the number of symbol "
+        + "level dependencies between parts. The parts can be written out with cleave."),
+  retained("count set-expression",
+      "Displays the count symbols in the set expression which retain the most other symbols, "
+        + "with the number of symbols each retains. A symbol retains the symbols which are only "
+        + "reachable from EntryPoints through it or its members, including them, so a symbol X "
+        + "retains 'size ~X' symbols. Symbols which are not reachable from EntryPoints are not "
+        + "displayed."),
 
   // set mutation
   create("set-name",
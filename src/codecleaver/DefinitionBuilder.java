@@ -41,6 +41,7 @@ public class DefinitionBuilder implements IdClassVisitor {
   private final HashSet<Pair<TypeId, String>> ignoredTypes;
 
   private int access;
+  private int size;
   private TypeId superId;
   private TypeId[] interfaceIds;
   private ImmutableSet.Builder<AnnotationInfo> annotations;
@@ -92,7 +93,8 @@ public class DefinitionBuilder implements IdClassVisitor {
       String name,
       String signature,
       String superName,
-      String[] interfaces) {
+      String[] interfaces,
+      int size) {
 
     if (this.access != 0 || this.superId != null
         || this.interfaceIds != null || this.annotations != null
@@ -108,6 +110,7 @@ public class DefinitionBuilder implements IdClassVisitor {
     currentTypeId = id;
 
     this.access = access;
+    this.size = size;
     this.annotations = new ImmutableSet.Builder<AnnotationInfo>();
     this.superId = superName == null ? null : ids.getIdOfType(superName);
 
@@ -138,10 +141,12 @@ public class DefinitionBuilder implements IdClassVisitor {
           currentTypeId,
           infos.getBestGuessContainerOf(currentTypeId),
           access,
+          size,
           superId,
           interfaceIds,
           annotations.build());
       access = 0;
+      size = 0;
       superId = null;
       interfaceIds = null;
       annotations = null;
@@ -184,7 +189,8 @@ public class DefinitionBuilder implements IdClassVisitor {
       final String name,
       final String desc,
       final String signature,
-      final String[] exceptions) {
+      final String[] exceptions,
+      final int codeLength) {
 
     if (isIgnore()) {
       return null;
@@ -208,7 +214,8 @@ public class DefinitionBuilder implements IdClassVisitor {
           @Override public void visitCode() {}
 
           @Override public void visitEnd() {
-            infos.createMethod(id, getCurrentInfo(), access, desc, annotations.build());
+            infos.createMethod(
+                id, getCurrentInfo(), access, codeLength, desc, annotations.build());
           }
 
           @Override public void visitFieldInsn(
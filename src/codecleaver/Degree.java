@@ -0,0 +1,49 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+/**
+ * The degree by which the top command ranks symbols: the number of direct dependencies leaving
+ * or entering a symbol, or the estimated size of its transitive closure in either direction.
+ */
+public enum Degree {
+  In("in", true, false),
+  Out("out", false, false),
+  TransitiveIn("in*", true, true),
+  TransitiveOut("out*", false, true);
+
+  public final String keyword;
+  public final boolean isIncoming;
+  public final boolean isTransitive;
+
+  private Degree(String keyword, boolean isIncoming, boolean isTransitive) {
+    this.keyword = keyword;
+    this.isIncoming = isIncoming;
+    this.isTransitive = isTransitive;
+  }
+
+  /**
+   * Returns the degree written as keyword, or null if there is none.
+   */
+  public static Degree fromKeyword(String keyword) {
+    for (Degree degree : values()) {
+      if (degree.keyword.equals(keyword)) {
+        return degree;
+      }
+    }
+    return null;
+  }
+}
@@ -34,12 +34,19 @@ public class DependencyGraphBuilder implements IdClassVisitor {
   private final IdTable ids;
   private final InfoTable infos;
   private final DirectedGraph<Id> inheritanceGraph;
+  private final DispatchBuilder dispatch;
   private final DirectedGraph<Id> result;
 
-  public DependencyGraphBuilder(InfoTable infos, DirectedGraph<Id> inheritanceGraph) {
+  /**
+   * If dispatch is not null, the virtual calls and instantiations of each method are recorded in
+   * it.
+   */
+  public DependencyGraphBuilder(
+      InfoTable infos, DirectedGraph<Id> inheritanceGraph, DispatchBuilder dispatch) {
     this.ids = infos.ids;
     this.infos = infos;
     this.inheritanceGraph = inheritanceGraph;
+    this.dispatch = dispatch;
     this.result = new DirectedGraph<Id>();
   }
   
@@ -82,12 +89,12 @@ public class DependencyGraphBuilder implements IdClassVisitor {
   }
 
   private void addImplements(TypeId classId, TypeId interfaceId) {
-    result.addEdge(classId, interfaceId);
+    result.addEdge(classId, interfaceId, EdgeKind.Implements.mask());
   }
 
   private void addExtends(TypeId classId, TypeId superId) {
     if (superId != null) {
-      result.addEdge(classId, superId);
+      result.addEdge(classId, superId, EdgeKind.Extends.mask());
     }
   }
   
@@ -100,7 +107,8 @@ public class DependencyGraphBuilder implements IdClassVisitor {
       String name,
       String signature,
       String superName,
-      String[] interfaces) {
+      String[] interfaces,
+      int size) {
 
     if (shouldIgnoreClass(id)) {
       setIgnoredClass(id);
@@ -140,8 +148,8 @@ public class DependencyGraphBuilder implements IdClassVisitor {
       return null;
     }
 
-    result.addEdge(id, currentTypeId);
-    result.addOptionalEdge(id, ids.idOfDescriptor(desc));
+    result.addEdge(id, currentTypeId, EdgeKind.Member.mask());
+    result.addOptionalEdge(id, ids.idOfDescriptor(desc), EdgeKind.FieldType.mask());
 
     if (signature != null) {
       // TODO(peterhal): throw new IllegalArgumentException();
@@ -159,25 +167,27 @@ public class DependencyGraphBuilder implements IdClassVisitor {
       String name,
       String desc,
       String signature,
-      String[] exceptions) {
+      String[] exceptions,
+      int codeLength) {
 
     if (isIgnoredClass()) {
       return null;
     }
 
-    result.addEdge(methodId, currentTypeId);
-    result.addOptionalEdge(methodId, ids.getIdOfType(Type.getReturnType(desc)));
+    int signatureKind = EdgeKind.Signature.mask();
+    result.addEdge(methodId, currentTypeId, EdgeKind.Member.mask());
+    result.addOptionalEdge(methodId, ids.getIdOfType(Type.getReturnType(desc)), signatureKind);
     for (Type argumentType : Type.getArgumentTypes(desc)) {
-      result.addOptionalEdge(methodId, ids.getIdOfType(argumentType));
+      result.addOptionalEdge(methodId, ids.getIdOfType(argumentType), signatureKind);
     }
 
     if (infos.getMethod(methodId).isStaticInitializer()) {
-      result.addEdge(currentTypeId, methodId);
+      result.addEdge(currentTypeId, methodId, EdgeKind.StaticInitializer.mask());
     }
 
     if (exceptions != null) {
       for (String exceptionName : exceptions) {
-        result.addEdge(methodId, ids.getIdOfType(exceptionName));
+        result.addEdge(methodId, ids.getIdOfType(exceptionName), signatureKind);
       }
     }
 
@@ -196,7 +206,7 @@ public class DependencyGraphBuilder implements IdClassVisitor {
       // graph.addEdge(currentTypeId, methodId);
     }
     
-    return new GraphBuilderMethodVisitor(ids, infos, result, methodId);
+    return new GraphBuilderMethodVisitor(ids, infos, result, dispatch, methodId);
   }
 
   @Override public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
@@ -231,7 +241,7 @@ public class DependencyGraphBuilder implements IdClassVisitor {
       }
 
       // innner classes depend on their containing class
-      result.addEdge(innerId, outerId);
+      result.addEdge(innerId, outerId, EdgeKind.OuterClass.mask());
       
       // Nested types are created parent-ed to their containing package. Re-parent them here to 
       // their containing type.
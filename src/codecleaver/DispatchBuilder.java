@@ -0,0 +1,255 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import codecleaver.iterable.Sequence;
+import codecleaver.util.DirectedGraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Adds dispatch edges to a dependency graph. A dispatch edge goes from a method making a virtual
+ * call to each method the call may dispatch to at run time, other than the method the call
+ * resolves to. The virtual calls and instantiations of each method are recorded while the
+ * dependency graph is built.
+ */
+final class DispatchBuilder {
+  private final InfoTable infos;
+  private final DirectedGraph<Id> inheritanceGraph;
+  private final HashMap<MethodId, LinkedHashSet<MethodId>> virtualCalls =
+      new HashMap<MethodId, LinkedHashSet<MethodId>>();
+  private final HashMap<MethodId, LinkedHashSet<TypeId>> instantiations =
+      new HashMap<MethodId, LinkedHashSet<TypeId>>();
+  // the concrete classes which are each type or a sub type of it, computed once per type
+  private final HashMap<Id, List<TypeId>> concreteSubclasses = new HashMap<Id, List<TypeId>>();
+
+  public DispatchBuilder(InfoTable infos, DirectedGraph<Id> inheritanceGraph) {
+    this.infos = infos;
+    this.inheritanceGraph = inheritanceGraph;
+  }
+
+  /**
+   * Records that caller makes a virtual call which resolves to target. When the call cannot be
+   * resolved, target is the method named by the call in its owner type, which need not be loaded.
+   */
+  public void addVirtualCall(MethodId caller, MethodId target) {
+    LinkedHashSet<MethodId> targets = virtualCalls.get(caller);
+    if (targets == null) {
+      targets = new LinkedHashSet<MethodId>();
+      virtualCalls.put(caller, targets);
+    }
+    targets.add(target);
+  }
+
+  /**
+   * Records that method creates instances of type.
+   */
+  public void addInstantiation(MethodId method, TypeId type) {
+    LinkedHashSet<TypeId> types = instantiations.get(method);
+    if (types == null) {
+      types = new LinkedHashSet<TypeId>();
+      instantiations.put(method, types);
+    }
+    types.add(type);
+  }
+
+  /**
+   * Adds the dispatch edges for mode to graph. Rapid type analysis only considers the code
+   * reachable from entryPoints, including code reachable through dispatch edges.
+   */
+  public void addEdges(DirectedGraph<Id> graph, DispatchMode mode, Iterable<Id> entryPoints) {
+    switch (mode) {
+      case cha:
+        addClassHierarchyEdges(graph);
+        break;
+      case rta:
+        new RapidTypeAnalysis(graph).run(entryPoints);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void addClassHierarchyEdges(DirectedGraph<Id> graph) {
+    HashMap<MethodId, List<MethodId>> dispatchTargets = new HashMap<MethodId, List<MethodId>>();
+    for (MethodId caller : virtualCalls.keySet()) {
+      for (MethodId target : virtualCalls.get(caller)) {
+        List<MethodId> methods = dispatchTargets.get(target);
+        if (methods == null) {
+          methods = new ArrayList<MethodId>();
+          for (TypeId type : concreteSubclassesOf(target.getParent())) {
+            MethodId method = dispatchTarget(target, type);
+            if (method != null && !methods.contains(method)) {
+              methods.add(method);
+            }
+          }
+          dispatchTargets.put(target, methods);
+        }
+        for (MethodId method : methods) {
+          graph.addEdge(caller, method, EdgeKind.Dispatch.mask());
+        }
+      }
+    }
+  }
+
+  /**
+   * A worklist computation of the code reachable from the entry points, the classes instantiated
+   * by that code, and the methods its virtual calls dispatch to in those classes. Each newly
+   * reachable method or newly instantiated class may add dispatch edges, which in turn make more
+   * methods reachable, until nothing changes.
+   */
+  private final class RapidTypeAnalysis {
+    private final DirectedGraph<Id> graph;
+    private final HashSet<Id> reachable = new HashSet<Id>();
+    private final ArrayList<Id> worklist = new ArrayList<Id>();
+    private final HashSet<TypeId> instantiated = new HashSet<TypeId>();
+    // the reachable callers of each virtual call target
+    private final HashMap<MethodId, List<MethodId>> callers =
+        new HashMap<MethodId, List<MethodId>>();
+    // the methods each virtual call target has been dispatched to
+    private final HashMap<MethodId, LinkedHashSet<MethodId>> dispatched =
+        new HashMap<MethodId, LinkedHashSet<MethodId>>();
+    // the virtual call targets with reachable callers, by their containing type
+    private final HashMap<Id, List<MethodId>> targetsByType = new HashMap<Id, List<MethodId>>();
+
+    public RapidTypeAnalysis(DirectedGraph<Id> graph) {
+      this.graph = graph;
+    }
+
+    public void run(Iterable<Id> entryPoints) {
+      for (Id entryPoint : entryPoints) {
+        markReachable(entryPoint);
+      }
+      while (!worklist.isEmpty()) {
+        Id value = worklist.remove(worklist.size() - 1);
+        for (Id dependent : graph.outEdgesOfVertex(value)) {
+          markReachable(dependent);
+        }
+        if (value instanceof MethodId) {
+          MethodId method = (MethodId) value;
+          if (instantiations.containsKey(method)) {
+            for (TypeId type : instantiations.get(method)) {
+              addInstantiatedType(type);
+            }
+          }
+          if (virtualCalls.containsKey(method)) {
+            for (MethodId target : virtualCalls.get(method)) {
+              addCall(method, target);
+            }
+          }
+        }
+      }
+    }
+
+    private void markReachable(Id value) {
+      if (reachable.add(value)) {
+        worklist.add(value);
+      }
+    }
+
+    private void addInstantiatedType(TypeId type) {
+      if (!isConcreteClass(type) || !instantiated.add(type)) {
+        return;
+      }
+      for (Id superType : inheritanceGraph.reachableFrom(type)) {
+        List<MethodId> targets = targetsByType.get(superType);
+        if (targets != null) {
+          for (MethodId target : targets) {
+            dispatch(target, type);
+          }
+        }
+      }
+    }
+
+    private void addCall(MethodId caller, MethodId target) {
+      List<MethodId> targetCallers = callers.get(target);
+      if (targetCallers == null) {
+        targetCallers = new ArrayList<MethodId>();
+        callers.put(target, targetCallers);
+        dispatched.put(target, new LinkedHashSet<MethodId>());
+        Id containingType = target.getParent();
+        List<MethodId> targets = targetsByType.get(containingType);
+        if (targets == null) {
+          targets = new ArrayList<MethodId>();
+          targetsByType.put(containingType, targets);
+        }
+        targets.add(target);
+        targetCallers.add(caller);
+        for (TypeId type : concreteSubclassesOf(containingType)) {
+          if (instantiated.contains(type)) {
+            dispatch(target, type);
+          }
+        }
+      } else {
+        targetCallers.add(caller);
+        for (MethodId method : dispatched.get(target)) {
+          graph.addEdge(caller, method, EdgeKind.Dispatch.mask());
+        }
+      }
+    }
+
+    private void dispatch(MethodId target, TypeId type) {
+      MethodId method = dispatchTarget(target, type);
+      if (method != null && dispatched.get(target).add(method)) {
+        for (MethodId caller : callers.get(target)) {
+          graph.addEdge(caller, method, EdgeKind.Dispatch.mask());
+        }
+        markReachable(method);
+      }
+    }
+  }
+
+  /**
+   * Returns the concrete classes which are type or a sub type of it.
+   */
+  private List<TypeId> concreteSubclassesOf(Id type) {
+    List<TypeId> result = concreteSubclasses.get(type);
+    if (result == null) {
+      result = new ArrayList<TypeId>();
+      for (Id subtype : inheritanceGraph.canReach(Sequence.singleton(type))) {
+        if (isConcreteClass(subtype)) {
+          result.add((TypeId) subtype);
+        }
+      }
+      concreteSubclasses.put(type, result);
+    }
+    return result;
+  }
+
+  private boolean isConcreteClass(Id type) {
+    if (!infos.hasInfo(type)) {
+      return false;
+    }
+    TypeInfo info = infos.getType((TypeId) type);
+    return !info.isInterface() && !info.isAbstract();
+  }
+
+  /**
+   * Returns the method a virtual call which resolves to target runs for an instance of type, or
+   * null if it runs target itself or cannot be resolved.
+   */
+  private MethodId dispatchTarget(MethodId target, TypeId type) {
+    MethodInfo method = infos.resolveMethod(type, target.name, target.desc);
+    if (method == null || method.id == target || method.isStatic() || method.isPrivate()) {
+      return null;
+    }
+    return method.id;
+  }
+}
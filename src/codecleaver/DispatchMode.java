@@ -0,0 +1,29 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+/**
+ * How virtual calls are added to the dependency graph.
+ */
+public enum DispatchMode {
+  // a virtual call depends only on the method it resolves to
+  none,
+  // class hierarchy analysis: also on the methods it dispatches to in every concrete subclass
+  cha,
+  // rapid type analysis: also on the methods it dispatches to in the classes which are
+  // instantiated by code reachable from the entry points
+  rta;
+}
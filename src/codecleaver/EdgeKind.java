@@ -0,0 +1,63 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+/**
+ * The kinds of dependency edges. Every edge of the dependency graph is labelled with the kinds of
+ * all the references it was built from, as a bit mask.
+ */
+public enum EdgeKind {
+  Extends("extends"),
+  Implements("implements"),
+  // a field or method depends on its containing type
+  Member("member"),
+  FieldType("fieldType"),
+  // return, argument and thrown types of a method
+  Signature("signature"),
+  Call("call"),
+  FieldAccess("field"),
+  // new, checkcast, instanceof and array creation
+  TypeReference("type"),
+  CatchType("catch"),
+  LocalVariable("local"),
+  OuterClass("outer"),
+  // a type depends on its static initializer
+  StaticInitializer("clinit"),
+  // a virtual call to a method it may dispatch to, see DispatchMode
+  Dispatch("dispatch");
+
+  public final String syntax;
+
+  private EdgeKind(String syntax) {
+    this.syntax = syntax;
+  }
+
+  public int mask() {
+    return 1 << ordinal();
+  }
+
+  /**
+   * Returns the kind written as syntax in an expression, or null if there is none.
+   */
+  public static EdgeKind fromSyntax(String syntax) {
+    for (EdgeKind kind : values()) {
+      if (kind.syntax.equals(syntax)) {
+        return kind;
+      }
+    }
+    return null;
+  }
+}
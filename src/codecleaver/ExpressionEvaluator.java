@@ -76,16 +76,54 @@ public final class ExpressionEvaluator {
     if (hadError()) {
       return null;
     }
+    // graph operators pass over their operand more than once
+    values = state.evaluate(values);
 
+    if (isClosure(expression.operator) && expression.kinds == 0 && expression.granularity == null
+        && expression.expression.type == ExpressionType.Primary) {
+      String source = expression.expression.asPrimary().value.value;
+      Iterable<Id> result = state.getCachedClosure(expression.operator, source);
+      if (result == null) {
+        result = evalUnary(expression, values);
+        state.cacheClosure(expression.operator, source, result);
+      }
+      return result;
+    }
+    return evalUnary(expression, values);
+  }
+
+  /**
+   * Is operator a transitive closure over one of the graphs. Closures of named sets and symbols
+   * are cached by the state.
+   */
+  private static boolean isClosure(UnaryOperator operator) {
+    switch (operator) {
+      case TransitiveFrom:
+      case TransitiveTo:
+      case TransitiveOverrides:
+      case TransitiveOverridden:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private Iterable<Id> evalUnary(UnaryExpression expression, Iterable<Id> values) {
     switch (expression.operator) {
       case From:
-        return state.getFrom(values);
+        return state.getFrom(values, expression.kinds, expression.granularity);
       case To:
-        return state.getTo(values);
+        return state.getTo(values, expression.kinds, expression.granularity);
       case TransitiveFrom:
-        return state.getTransitiveFrom(values);
+        return state.getTransitiveFrom(values, expression.kinds, expression.granularity);
       case TransitiveTo:
-        return state.getTransitiveTo(values);
+        return state.getTransitiveTo(values, expression.kinds, expression.granularity);
+      case BoundedFrom:
+        return state.getBoundedFrom(
+            values, expression.depth, expression.kinds, expression.granularity);
+      case BoundedTo:
+        return state.getBoundedTo(
+            values, expression.depth, expression.kinds, expression.granularity);
       case Overrides:
         return state.getOverrides(values);
       case Overridden:
@@ -98,10 +136,11 @@ public final class ExpressionEvaluator {
         return state.getExpand(values);
       case TransitiveExpand:
         return state.getTransitiveExpand(values);
+      case Exclusive:
+        return state.getExclusive(values);
       default:
         throw new IllegalArgumentException();
     }
-
   }
 
   /**
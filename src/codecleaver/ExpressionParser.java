@@ -106,6 +106,13 @@ public final class ExpressionParser {
   private Expression parseUnaryExpression() {
 
     if (peekUnaryOperator()) {
+      Token token = peekToken();
+      if (token instanceof GraphOperatorToken) {
+        nextToken();
+        GraphOperatorToken operator = (GraphOperatorToken) token;
+        return new UnaryExpression(token.type.unaryOperator, operator.depth, operator.kinds,
+            operator.granularity, parseUnaryExpression());
+      }
       return new UnaryExpression(parseUnaryOperator(), parseUnaryExpression());
     }
     return parsePrimaryExpression();
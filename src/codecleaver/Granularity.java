@@ -0,0 +1,41 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+/**
+ * The level at which symbols are grouped when rolling up the dependency graph.
+ */
+public enum Granularity {
+  packages(IdType.Package),
+  types(IdType.Type);
+
+  private final IdType idType;
+
+  private Granularity(IdType idType) {
+    this.idType = idType;
+  }
+
+  /**
+   * Returns the closest enclosing symbol of id at this granularity, including id itself. Returns
+   * null if id is not contained in a symbol of this granularity.
+   */
+  public Id rollup(Id id) {
+    while (id != null && id.type != idType) {
+      id = id.getParent();
+    }
+    return id;
+  }
+}
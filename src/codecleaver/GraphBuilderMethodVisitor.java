@@ -21,6 +21,7 @@ import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 public class GraphBuilderMethodVisitor implements MethodVisitor {
 
@@ -28,36 +29,39 @@ public class GraphBuilderMethodVisitor implements MethodVisitor {
   private final IdTable ids;
   private final InfoTable infos;
   private final DirectedGraph<Id> graph;
+  // records virtual calls and instantiations, null if dispatch edges are not being built
+  private final DispatchBuilder dispatch;
 
-  public GraphBuilderMethodVisitor(
-      IdTable ids, InfoTable infos, DirectedGraph<Id> graph, MethodId method) {
+  public GraphBuilderMethodVisitor(IdTable ids, InfoTable infos, DirectedGraph<Id> graph,
+      DispatchBuilder dispatch, MethodId method) {
     this.ids = ids;
     this.infos = infos;
     this.graph = graph;
+    this.dispatch = dispatch;
     this.method = method;
   }
 
-  private void addDependentType(String type) {
+  private void addDependentType(String type, EdgeKind kind) {
     Id dependent = ids.getIdOfType(type);
-    addDependent(dependent);
+    addDependent(dependent, kind);
   }
 
-  private void addOptionalDependentType(String type) {
+  private void addOptionalDependentType(String type, EdgeKind kind) {
     if (type != null) {
-      addDependentType(type);
+      addDependentType(type, kind);
     }
   }
 
   private void addDependentObjectType(String type) {
-    addOptionalDependent(ids.idOfObjectType(type));
+    addOptionalDependent(ids.idOfObjectType(type), EdgeKind.TypeReference);
   }
 
   private void addDependentField(String owner, String name, String desc) {
     Id dependent = infos.resolveOrAddFieldReference(owner, name, desc);
-    addDependent(dependent);
+    addDependent(dependent, EdgeKind.FieldAccess);
   }
 
-  private void addDependentMethod(String owner, String name, String desc) {
+  private void addDependentMethod(int opcode, String owner, String name, String desc) {
     // Object.clone is fabricated by the VM for array types
     if (owner.charAt(0) == '[' && name.equals("clone")) {
       addDependentObjectType(owner);
@@ -65,19 +69,24 @@ public class GraphBuilderMethodVisitor implements MethodVisitor {
     }
 
     Id dependent = infos.resolveOrAddMethodReference(owner, name, desc);
-    addDependent(dependent);
+    addDependent(dependent, EdgeKind.Call);
+    // unresolved targets are still recorded; their overrides may be in loaded sub types
+    if (dispatch != null
+        && (opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE)) {
+      dispatch.addVirtualCall(method, (MethodId) dependent);
+    }
   }
 
-  private void addDependent(Id dependent) {
-    graph.addEdge(method, dependent);
+  private void addDependent(Id dependent, EdgeKind kind) {
+    graph.addEdge(method, dependent, kind.mask());
   }
 
-  private void addOptionalDependent(Id dependent) {
-    graph.addOptionalEdge(method, dependent);
+  private void addOptionalDependent(Id dependent, EdgeKind kind) {
+    graph.addOptionalEdge(method, dependent, kind.mask());
   }
 
-  private void addDependentOfDescriptor(String desc) {
-    addOptionalDependent(ids.idOfDescriptor(desc));
+  private void addDependentOfDescriptor(String desc, EdgeKind kind) {
+    addOptionalDependent(ids.idOfDescriptor(desc), kind);
   }
 
   @Override public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
@@ -132,7 +141,7 @@ public class GraphBuilderMethodVisitor implements MethodVisitor {
       Label start,
       Label end,
       int index) {
-    addDependentOfDescriptor(desc);
+    addDependentOfDescriptor(desc, EdgeKind.LocalVariable);
   }
 
   @Override public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
@@ -142,11 +151,11 @@ public class GraphBuilderMethodVisitor implements MethodVisitor {
   }
 
   @Override public void visitMethodInsn(int opcode, String owner, String name, String desc) {
-    addDependentMethod(owner, name, desc);
+    addDependentMethod(opcode, owner, name, desc);
   }
 
   @Override public void visitMultiANewArrayInsn(String desc, int dims) {
-    addDependentOfDescriptor(desc);
+    addDependentOfDescriptor(desc, EdgeKind.TypeReference);
   }
 
   @Override public AnnotationVisitor visitParameterAnnotation(
@@ -158,11 +167,14 @@ public class GraphBuilderMethodVisitor implements MethodVisitor {
   }
 
   @Override public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
-    addOptionalDependentType(type);
+    addOptionalDependentType(type, EdgeKind.CatchType);
   }
 
   @Override public void visitTypeInsn(int opcode, String type) {
     addDependentObjectType(type);
+    if (dispatch != null && opcode == Opcodes.NEW) {
+      dispatch.addInstantiation(method, ids.getIdOfType(type));
+    }
   }
 
   @Override public void visitVarInsn(int opcode, int var) {
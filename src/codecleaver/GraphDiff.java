@@ -0,0 +1,142 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import codecleaver.util.DirectedGraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The differences between two versions of a file, each loaded into its own State. Symbols of the
+ * two versions are matched by name, so each comparison is a single pass over one version with
+ * lookups into the other.
+ */
+public final class GraphDiff {
+  private final Set<Id> beforeSymbols;
+  private final Set<Id> afterSymbols;
+  private final DirectedGraph<Id> beforeGraph;
+  private final DirectedGraph<Id> afterGraph;
+  private final HashMap<String, Id> beforeByName;
+  private final HashMap<String, Id> afterByName;
+
+  /**
+   * Compares the symbols defined in beforeFile in before with those defined in afterFile in after.
+   */
+  public GraphDiff(State before, String beforeFile, State after, String afterFile) {
+    beforeSymbols = before.getSet(beforeFile);
+    afterSymbols = after.getSet(afterFile);
+    beforeGraph = before.getDependencyGraph(null);
+    afterGraph = after.getDependencyGraph(null);
+    beforeByName = byName(before.getSet(PredefinedSet.ALL.toString()));
+    afterByName = byName(after.getSet(PredefinedSet.ALL.toString()));
+  }
+
+  private static HashMap<String, Id> byName(Iterable<Id> values) {
+    HashMap<String, Id> result = new HashMap<String, Id>();
+    for (Id value : values) {
+      result.put(value.toString(), value);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the names of the symbols defined only in the after version.
+   */
+  public List<String> getAddedSymbols() {
+    return missingNames(afterSymbols, beforeSymbols, beforeByName);
+  }
+
+  /**
+   * Returns the names of the symbols defined only in the before version.
+   */
+  public List<String> getRemovedSymbols() {
+    return missingNames(beforeSymbols, afterSymbols, afterByName);
+  }
+
+  /**
+   * Returns the dependencies of symbols defined in the after version which the before version
+   * does not have, as 'source -> destination'.
+   */
+  public List<String> getAddedDependencies() {
+    return missingEdges(afterSymbols, afterGraph, beforeGraph, beforeByName);
+  }
+
+  /**
+   * Returns the dependencies of symbols defined in the before version which the after version
+   * does not have.
+   */
+  public List<String> getRemovedDependencies() {
+    return missingEdges(beforeSymbols, beforeGraph, afterGraph, afterByName);
+  }
+
+  /**
+   * Returns the names of the symbols in values which are not in others. others are looked up by
+   * name in othersByName.
+   */
+  private static List<String> missingNames(
+      Iterable<Id> values, Set<Id> others, HashMap<String, Id> othersByName) {
+    List<String> result = new ArrayList<String>();
+    for (Id value : values) {
+      String name = value.toString();
+      Id other = othersByName.get(name);
+      if (other == null || !others.contains(other)) {
+        result.add(name);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the names of symbols in values which are not in others, matching symbols by name.
+   */
+  public static List<String> missingNames(Iterable<Id> values, Iterable<Id> others) {
+    HashSet<String> otherNames = new HashSet<String>();
+    for (Id other : others) {
+      otherNames.add(other.toString());
+    }
+    List<String> result = new ArrayList<String>();
+    for (Id value : values) {
+      if (!otherNames.contains(value.toString())) {
+        result.add(value.toString());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the edges of graph leaving sources which have no counterpart in others.
+   */
+  private static List<String> missingEdges(Iterable<Id> sources, DirectedGraph<Id> graph,
+      DirectedGraph<Id> others, HashMap<String, Id> othersByName) {
+    List<String> result = new ArrayList<String>();
+    for (Id source : sources) {
+      Id otherSource = othersByName.get(source.toString());
+      Set<Id> otherDestinations = otherSource == null ? null : others.outEdgesOfVertex(otherSource);
+      for (Id destination : graph.outEdgesOfVertex(source)) {
+        Id otherDestination = othersByName.get(destination.toString());
+        if (otherDestinations == null || otherDestination == null
+            || !otherDestinations.contains(otherDestination)) {
+          result.add(source + " -> " + destination);
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,329 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import codecleaver.util.DirectedGraph;
+import codecleaver.util.EdgeVisitor;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes the subgraph of a dependency graph induced by a set of symbols to a file. Edges are
+ * written through a buffer as they are visited, so the size of the graph written does not affect
+ * memory use. Edges of a rollup graph also carry their multiplicity as a weight.
+ */
+public final class GraphExporter {
+  private static final int BUFFER_SIZE = 1 << 16;
+  // "CCEG"
+  private static final int BINARY_MAGIC = 0x43434547;
+  private static final int BINARY_VERSION = 1;
+
+  private final DirectedGraph<Id> graph;
+  private final RollupGraph rollup;
+  private final String[] kindNames = new String[1 << EdgeKind.values().length];
+
+  /**
+   * rollup is null when graph is the symbol level dependency graph.
+   */
+  public GraphExporter(DirectedGraph<Id> graph, RollupGraph rollup) {
+    this.graph = graph;
+    this.rollup = rollup;
+  }
+
+  /**
+   * Writes the vertices in values and the edges between them to fileName in format.
+   */
+  public void export(String fileName, ExportFormat format, Iterable<Id> values)
+      throws IOException {
+    List<Id> vertices = sortedVertices(values);
+    if (format == ExportFormat.bin) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE));
+      try {
+        writeBinary(out, vertices);
+      } finally {
+        out.close();
+      }
+      return;
+    }
+
+    Writer out = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"), BUFFER_SIZE);
+    try {
+      switch (format) {
+        case dot:
+          writeDot(out, vertices);
+          break;
+        case graphml:
+          writeGraphMl(out, vertices);
+          break;
+        case csv:
+          writeCsv(out, vertices);
+          break;
+        default:
+          throw new IllegalArgumentException(format.toString());
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static List<Id> sortedVertices(Iterable<Id> values) {
+    List<Id> result = new ArrayList<Id>();
+    for (Id value : values) {
+      result.add(value);
+    }
+    Collections.sort(result, new Comparator<Id>() {
+
+      @Override public int compare(Id left, Id right) {
+        return left.toString().compareTo(right.toString());
+      }
+    });
+    return result;
+  }
+
+  private void writeDot(final Writer out, List<Id> vertices) throws IOException {
+    out.write("digraph dependencies {\n");
+    for (Id vertex : vertices) {
+      out.write("  ");
+      writeQuoted(out, vertex.toString());
+      out.write(";\n");
+    }
+    new EdgeWriter() {
+
+      @Override protected void writeEdge(Id source, Id destination, int kinds)
+          throws IOException {
+        out.write("  ");
+        writeQuoted(out, source.toString());
+        out.write(" -> ");
+        writeQuoted(out, destination.toString());
+        out.write(" [kinds=\"");
+        out.write(kindNames(kinds));
+        if (rollup != null) {
+          out.write("\", weight=");
+          out.write(Integer.toString(rollup.getMultiplicity(source, destination)));
+          out.write("];\n");
+        } else {
+          out.write("\"];\n");
+        }
+      }
+    }.writeEdges(vertices);
+    out.write("}\n");
+  }
+
+  /**
+   * Writes value as a DOT string, escaping quotes and backslashes.
+   */
+  private static void writeQuoted(Writer out, String value) throws IOException {
+    out.write('"');
+    for (int index = 0; index < value.length(); index++) {
+      char ch = value.charAt(index);
+      if (ch == '"' || ch == '\\') {
+        out.write('\\');
+      }
+      out.write(ch);
+    }
+    out.write('"');
+  }
+
+  private void writeGraphMl(final Writer out, List<Id> vertices) throws IOException {
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    out.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+    out.write("  <key id=\"kinds\" for=\"edge\" attr.name=\"kinds\" attr.type=\"string\"/>\n");
+    if (rollup != null) {
+      out.write("  <key id=\"weight\" for=\"edge\" attr.name=\"weight\" attr.type=\"int\"/>\n");
+    }
+    out.write("  <graph id=\"dependencies\" edgedefault=\"directed\">\n");
+    for (Id vertex : vertices) {
+      out.write("    <node id=\"");
+      writeEscaped(out, vertex.toString());
+      out.write("\"/>\n");
+    }
+    new EdgeWriter() {
+
+      @Override protected void writeEdge(Id source, Id destination, int kinds)
+          throws IOException {
+        out.write("    <edge source=\"");
+        writeEscaped(out, source.toString());
+        out.write("\" target=\"");
+        writeEscaped(out, destination.toString());
+        out.write("\"><data key=\"kinds\">");
+        out.write(kindNames(kinds));
+        out.write("</data>");
+        if (rollup != null) {
+          out.write("<data key=\"weight\">");
+          out.write(Integer.toString(rollup.getMultiplicity(source, destination)));
+          out.write("</data>");
+        }
+        out.write("</edge>\n");
+      }
+    }.writeEdges(vertices);
+    out.write("  </graph>\n");
+    out.write("</graphml>\n");
+  }
+
+  /**
+   * Writes value as XML attribute text.
+   */
+  private static void writeEscaped(Writer out, String value) throws IOException {
+    for (int index = 0; index < value.length(); index++) {
+      char ch = value.charAt(index);
+      switch (ch) {
+        case '<':
+          out.write("&lt;");
+          break;
+        case '>':
+          out.write("&gt;");
+          break;
+        case '&':
+          out.write("&amp;");
+          break;
+        case '"':
+          out.write("&quot;");
+          break;
+        default:
+          out.write(ch);
+          break;
+      }
+    }
+  }
+
+  private void writeCsv(final Writer out, List<Id> vertices) throws IOException {
+    out.write(rollup != null ? "source,destination,kinds,weight\n" : "source,destination,kinds\n");
+    new EdgeWriter() {
+
+      @Override protected void writeEdge(Id source, Id destination, int kinds)
+          throws IOException {
+        writeCsvField(out, source.toString());
+        out.write(',');
+        writeCsvField(out, destination.toString());
+        out.write(',');
+        writeCsvField(out, kindNames(kinds));
+        if (rollup != null) {
+          out.write(',');
+          out.write(Integer.toString(rollup.getMultiplicity(source, destination)));
+        }
+        out.write('\n');
+      }
+    }.writeEdges(vertices);
+  }
+
+  /**
+   * Writes value as a CSV field, quoting it if it contains a comma or a quote.
+   */
+  private static void writeCsvField(Writer out, String value) throws IOException {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    for (int index = 0; index < value.length(); index++) {
+      char ch = value.charAt(index);
+      if (ch == '"') {
+        out.write('"');
+      }
+      out.write(ch);
+    }
+    out.write('"');
+  }
+
+  /**
+   * Writes the magic number, version, a flag which is 1 if edges are weighted, the number of
+   * vertices and the name of each vertex. Then each edge as the indices of its source and
+   * destination, its kinds and, if weighted, its weight, until the end of the file.
+   */
+  private void writeBinary(final DataOutputStream out, List<Id> vertices) throws IOException {
+    out.writeInt(BINARY_MAGIC);
+    out.writeInt(BINARY_VERSION);
+    out.writeInt(rollup != null ? 1 : 0);
+    out.writeInt(vertices.size());
+    final HashMap<Id, Integer> indices = new HashMap<Id, Integer>();
+    for (Id vertex : vertices) {
+      indices.put(vertex, indices.size());
+      out.writeUTF(vertex.toString());
+    }
+    new EdgeWriter() {
+
+      @Override protected void writeEdge(Id source, Id destination, int kinds)
+          throws IOException {
+        out.writeInt(indices.get(source));
+        out.writeInt(indices.get(destination));
+        out.writeShort(kinds);
+        if (rollup != null) {
+          out.writeInt(rollup.getMultiplicity(source, destination));
+        }
+      }
+    }.writeEdges(vertices);
+  }
+
+  /**
+   * Returns the syntax of the EdgeKinds in kinds, separated by commas.
+   */
+  private String kindNames(int kinds) {
+    String result = kindNames[kinds];
+    if (result == null) {
+      StringBuilder builder = new StringBuilder();
+      for (EdgeKind kind : EdgeKind.values()) {
+        if ((kinds & kind.mask()) != 0) {
+          if (builder.length() > 0) {
+            builder.append(',');
+          }
+          builder.append(kind.syntax);
+        }
+      }
+      result = kindNames[kinds] = builder.toString();
+    }
+    return result;
+  }
+
+  /**
+   * Writes each edge between the vertices as it is visited. The first error stops the writing and
+   * is rethrown once the visit completes.
+   */
+  private abstract class EdgeWriter implements EdgeVisitor<Id> {
+    private IOException exception;
+
+    protected abstract void writeEdge(Id source, Id destination, int kinds) throws IOException;
+
+    @Override public void visitEdge(Id source, Id destination, int kinds) {
+      if (exception == null) {
+        try {
+          writeEdge(source, destination, kinds);
+        } catch (IOException e) {
+          exception = e;
+        }
+      }
+    }
+
+    public void writeEdges(List<Id> vertices) throws IOException {
+      graph.visitEdgesWithin(vertices, this);
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+/**
+ * A dependency graph operator token such as '<3' or '<*{call,packages}'. Includes the maximum depth
+ * of a depth bounded operator, the kinds of edges to follow and the granularity to query at.
+ */
+public class GraphOperatorToken extends Token {
+  public GraphOperatorToken(TokenType type, int startIndex, int endIndex, int depth, int kinds,
+      Granularity granularity) {
+    super(type, startIndex, endIndex);
+    this.depth = depth;
+    this.kinds = kinds;
+    this.granularity = granularity;
+  }
+
+  public final int depth;
+  // a bit mask of EdgeKinds, or 0 for all kinds
+  public final int kinds;
+  // null to query individual symbols
+  public final Granularity granularity;
+}
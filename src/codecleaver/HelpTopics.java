@@ -197,12 +197,15 @@ public final class HelpTopics {
         "\t    >  unary-expression",
         "\t    <*  unary-expression",
         "\t    >*  unary-expression",
+        "\t    <n  unary-expression",
+        "\t    >n  unary-expression",
         "\t    [  unary-expression",
         "\t    ]  unary-expression",
         "\t    [*  unary-expression",
         "\t    ]*  unary-expression",
         "\t    !  unary-expression",
         "\t    !*  unary-expression",
+        "\t    ~  unary-expression",
         "\t    primary-expression",
         "",
         "Unary operators are:",
@@ -212,6 +215,27 @@ public final class HelpTopics {
         "\t    >  direct callers",
         "\t    <*  transitive closure of direct callees",
         "\t    >*  transitive closure of direct callers",
+        "\t    <n  transitive callees at most n calls away, e.g. <3",
+        "\t    >n  transitive callers at most n calls away, e.g. >3",
+        "\tEach dependency graph query operator may be followed by a list of edge kinds in "
+          + "braces, such as <*{call,field}. Only dependencies of those kinds are followed. The "
+          + "edge kinds are:",
+        "\t    extends  a class to its super class",
+        "\t    implements  a type to its interfaces",
+        "\t    member  a field or method to its containing type",
+        "\t    fieldType  a field to its type",
+        "\t    signature  a method to its return, argument and thrown types",
+        "\t    call  a method to the methods it calls",
+        "\t    field  a method to the fields it reads or writes",
+        "\t    type  a method to the types it creates, casts to or tests",
+        "\t    catch  a method to the exception types it catches",
+        "\t    local  a method to the types of its local variables",
+        "\t    outer  a nested type to its outer type",
+        "\t    clinit  a type to its static initializer",
+        "\t    dispatch  a method to the methods its virtual calls may dispatch to, see dispatch",
+        "\tThe list may also include packages or types, such as <*{packages}, to query the "
+          + "dependencies between the packages or types containing the set. The result is the "
+          + "dependent packages or types.",
         "\tInheritance Graph Query Operators:",
         "\t    [  direct overrides/inherits from",
         "\t    ]  directly overridden by/super class of",
@@ -219,7 +243,10 @@ public final class HelpTopics {
         "\t    ]*  transitive overridden by/super class of",
         "\tExpand Operators:",
         "\t    !  direct children of all elements of the set",
-        "\t    !*  all descendants of all elements of the set, including the original set");
+        "\t    !*  all descendants of all elements of the set, including the original set",
+        "\tDominator Operators:",
+        "\t    ~  symbols which are only reachable from EntryPoints through the set, including "
+          + "the set. These are the symbols which would be unused if the set were removed.");
     addTopic("primary-expression", "",
         "Primary Expressions",
         "Syntax:",
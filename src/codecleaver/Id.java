@@ -39,6 +39,7 @@ public abstract class Id {
   public final IdType type;
   private ContainerId parent;
   private boolean attachedToParent;
+  private int ordinal = -1;
 
   protected Id(IdType type, ContainerId parent) {
 
@@ -50,6 +51,21 @@ public abstract class Id {
     return this.parent;
   }
 
+  /**
+   * Returns the number of this Id. Ids are numbered densely from 0 in the order they are added to
+   * their IdTable.
+   */
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  /**
+   * Should only be called by IdTable.
+   */
+  void setOrdinal(int ordinal) {
+    this.ordinal = ordinal;
+  }
+
   /**
    * Should only be called by IdTable.
    */
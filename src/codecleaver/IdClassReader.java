@@ -34,6 +34,9 @@ public final class IdClassReader implements ClassVisitor {
   private final ClassReader reader;
   private IdClassVisitor visitor;
   private TypeId currentTypeId;
+  // the code length of each method of the current class, in the order they are visited
+  private int[] codeLengths;
+  private int methodIndex;
 
   public static void visitJarFile(IdTable ids, IdClassVisitor visitor, String fileName)
       throws StateException {
@@ -83,9 +86,73 @@ public final class IdClassReader implements ClassVisitor {
       String superName,
       String[] interfaces) {
     currentTypeId = ids.getIdOfType(name);
-    visitor.visit(currentTypeId, version, access, name, signature, superName, interfaces);
+    codeLengths = readCodeLengths();
+    methodIndex = 0;
+    visitor.visit(
+        currentTypeId, version, access, name, signature, superName, interfaces, reader.b.length);
   }
 
+  /**
+   * Returns the length of the Code attribute of each method in the class file, in the order the
+   * methods appear in the class file, which is also the order in which they are visited.
+   */
+  private int[] readCodeLengths() {
+    // skip access, this class and super class
+    int offset = reader.header + 6;
+    offset += 2 + 2 * reader.readUnsignedShort(offset);
+    int fieldCount = reader.readUnsignedShort(offset);
+    offset += 2;
+    for (int field = 0; field < fieldCount; field++) {
+      // skip access, name and desc
+      offset = skipAttributes(offset + 6);
+    }
+    int methodCount = reader.readUnsignedShort(offset);
+    offset += 2;
+    int[] result = new int[methodCount];
+    for (int method = 0; method < methodCount; method++) {
+      int attributeCount = reader.readUnsignedShort(offset + 6);
+      offset += 8;
+      for (int attribute = 0; attribute < attributeCount; attribute++) {
+        if (isCodeAttribute(reader.readUnsignedShort(offset))) {
+          // skip max stack and max locals
+          result[method] = reader.readInt(offset + 10);
+        }
+        offset += 6 + reader.readInt(offset + 2);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the offset following the attributes which start at offset.
+   */
+  private int skipAttributes(int offset) {
+    int attributeCount = reader.readUnsignedShort(offset);
+    offset += 2;
+    for (int attribute = 0; attribute < attributeCount; attribute++) {
+      offset += 6 + reader.readInt(offset + 2);
+    }
+    return offset;
+  }
+
+  /**
+   * Is the constant pool entry at index the attribute name 'Code'.
+   */
+  private boolean isCodeAttribute(int index) {
+    int offset = reader.getItem(index);
+    if (reader.readUnsignedShort(offset) != CODE.length) {
+      return false;
+    }
+    for (int i = 0; i < CODE.length; i++) {
+      if (reader.b[offset + 2 + i] != CODE[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final byte[] CODE = { 'C', 'o', 'd', 'e' };
+
   @Override public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
     return visitor.visitAnnotation(desc, visible);
   }
@@ -95,6 +162,7 @@ public final class IdClassReader implements ClassVisitor {
   @Override public void visitEnd() {
     visitor.visitEnd();
     currentTypeId = null;
+    codeLengths = null;
   }
 
   @Override public FieldVisitor visitField(
@@ -111,7 +179,8 @@ public final class IdClassReader implements ClassVisitor {
   @Override public MethodVisitor visitMethod(
       int access, String name, String desc, String signature, String[] exceptions) {
     MethodId methodId = ids.getIdOfMethod(currentTypeId, name, desc);
-    return visitor.visitMethod(methodId, access, name, desc, signature, exceptions);
+    return visitor.visitMethod(
+        methodId, access, name, desc, signature, exceptions, codeLengths[methodIndex++]);
   }
 
   // owner, name and desc are the containing method for an anonymous inner class
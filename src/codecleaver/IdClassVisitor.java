@@ -48,6 +48,7 @@ public interface IdClassVisitor {
    *        class is {@link Object}. May be <tt>null</tt>, but only for the {@link Object} class.
    * @param interfaces the internal names of the class's interfaces (see {@link
    *        org.objectweb.asm.Type#getInternalName() getInternalName}). May be <tt>null</tt>.
+   * @param size the size of the class file in bytes.
    */
   void visit(TypeId id,
       int version,
@@ -55,7 +56,8 @@ public interface IdClassVisitor {
       String name,
       String signature,
       String superName,
-      String[] interfaces);
+      String[] interfaces,
+      int size);
 
   /**
    * Visits an annotation of the class.
@@ -130,6 +132,8 @@ public interface IdClassVisitor {
    *        type and exceptions do not use generic types.
    * @param exceptions the internal names of the method's exception classes (see {@link
    *        org.objectweb.asm.Type#getInternalName() getInternalName}). May be <tt>null</tt>.
+   * @param codeLength the length in bytes of the method's byte code. 0 for abstract and native
+   *        methods.
    * @return an object to visit the byte code of the method, or <tt>null</tt> if this class visitor
    *         is not interested in visiting the code of this method.
    */
@@ -138,7 +142,8 @@ public interface IdClassVisitor {
       String name,
       String desc,
       String signature,
-      String[] exceptions);
+      String[] exceptions,
+      int codeLength);
 
   void visitEnd();
 }
@@ -0,0 +1,586 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of the Ids of one IdTable, stored as a compressed bitmap of their ordinals. Ordinals are
+ * split into chunks of 65536 by their high 16 bits, as in Roaring bitmaps. A chunk with few
+ * members stores their low 16 bits in a sorted array and a chunk with many stores a bitmap of
+ * 1024 words. Union, intersection and difference with another IdSet of the same IdTable work a
+ * chunk and a word at a time, and size() is kept as members are added and removed.
+ *
+ * <p>Copies share their chunks with the original, so copy() costs one reference per 65536
+ * ordinals. A shared chunk is copied the first time either set changes it, so changing a copy
+ * costs in proportion to the chunks changed rather than to the size of the set.
+ */
+public final class IdSet extends AbstractSet<Id> {
+  // chunks with more members than this are stored as bitmaps
+  private static final int ARRAY_LIMIT = 4096;
+  private static final int BITMAP_WORDS = 1024;
+
+  private final IdTable ids;
+  // the high 16 bits of the ordinals in each chunk, in increasing order
+  private int[] keys = new int[4];
+  private Chunk[] chunks = new Chunk[4];
+  private int chunkCount;
+  private int size;
+
+  public IdSet(IdTable ids) {
+    this.ids = ids;
+  }
+
+  /**
+   * Returns a new set containing values.
+   */
+  public static IdSet copyOf(IdTable ids, Iterable<? extends Id> values) {
+    if (isSetOf(ids, values)) {
+      return ((IdSet) values).copy();
+    }
+    IdSet result = new IdSet(ids);
+    for (Id value : values) {
+      result.add(value);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a copy of this set which shares its chunks until either set changes them.
+   */
+  public IdSet copy() {
+    IdSet result = new IdSet(ids);
+    int length = Math.max(4, chunkCount);
+    result.keys = Arrays.copyOf(keys, length);
+    result.chunks = Arrays.copyOf(chunks, length);
+    result.chunkCount = chunkCount;
+    result.size = size;
+    for (int index = 0; index < chunkCount; index++) {
+      chunks[index].shared = true;
+    }
+    return result;
+  }
+
+  /**
+   * Returns values if it is an IdSet of ids, otherwise a new set containing values.
+   */
+  public static IdSet of(IdTable ids, Iterable<? extends Id> values) {
+    return isSetOf(ids, values) ? (IdSet) values : copyOf(ids, values);
+  }
+
+  // sets of another IdTable go through add and contains, which check each Id's table
+  private static boolean isSetOf(IdTable ids, Iterable<?> values) {
+    return values instanceof IdSet && ((IdSet) values).ids == ids;
+  }
+
+  @Override public int size() {
+    return size;
+  }
+
+  @Override public boolean contains(Object value) {
+    if (!(value instanceof Id)) {
+      return false;
+    }
+    int ordinal = ((Id) value).getOrdinal();
+    int index = indexOf(ordinal >>> 16);
+    return index >= 0 && chunks[index].contains(ordinal & 0xFFFF) && isOwnId((Id) value);
+  }
+
+  private boolean isOwnId(Id value) {
+    int ordinal = value.getOrdinal();
+    return ordinal >= 0 && ordinal < ids.size() && ids.getIdOfOrdinal(ordinal) == value;
+  }
+
+  @Override public boolean add(Id value) {
+    if (!isOwnId(value)) {
+      throw new IllegalArgumentException(String.format("'%s' is from another IdTable.", value));
+    }
+    int ordinal = value.getOrdinal();
+    int index = indexOf(ordinal >>> 16);
+    if (index < 0) {
+      index = insertChunk(-index - 1, ordinal >>> 16, new Chunk());
+    }
+    if (chunks[index].contains(ordinal & 0xFFFF)) {
+      return false;
+    }
+    chunks[index] = writable(chunks[index]);
+    chunks[index].add(ordinal & 0xFFFF);
+    size++;
+    return true;
+  }
+
+  @Override public boolean remove(Object value) {
+    if (!contains(value)) {
+      return false;
+    }
+    int ordinal = ((Id) value).getOrdinal();
+    int index = indexOf(ordinal >>> 16);
+    chunks[index] = writable(chunks[index]);
+    chunks[index].remove(ordinal & 0xFFFF);
+    if (chunks[index].cardinality == 0) {
+      removeChunk(index);
+    }
+    size--;
+    return true;
+  }
+
+  @Override public void clear() {
+    Arrays.fill(chunks, 0, chunkCount, null);
+    chunkCount = 0;
+    size = 0;
+  }
+
+  @Override public boolean addAll(Collection<? extends Id> values) {
+    if (!isSetOf(ids, values)) {
+      return super.addAll(values);
+    }
+    IdSet other = (IdSet) values;
+    int oldSize = size;
+    int[] newKeys = new int[chunkCount + other.chunkCount];
+    Chunk[] newChunks = new Chunk[newKeys.length];
+    int count = 0;
+    int left = 0;
+    int right = 0;
+    while (left < chunkCount || right < other.chunkCount) {
+      if (right == other.chunkCount
+          || (left < chunkCount && keys[left] < other.keys[right])) {
+        newKeys[count] = keys[left];
+        newChunks[count++] = chunks[left++];
+      } else if (left == chunkCount || other.keys[right] < keys[left]) {
+        newKeys[count] = other.keys[right];
+        Chunk chunk = other.chunks[right++];
+        chunk.shared = true;
+        newChunks[count++] = chunk;
+      } else {
+        Chunk chunk = chunks[left++];
+        Chunk otherChunk = other.chunks[right++];
+        if (chunk != otherChunk) {
+          chunk = writable(chunk);
+          chunk.or(otherChunk);
+        }
+        newKeys[count] = keys[left - 1];
+        newChunks[count++] = chunk;
+      }
+    }
+    setChunks(newKeys, newChunks, count);
+    return size != oldSize;
+  }
+
+  @Override public boolean retainAll(Collection<?> values) {
+    if (!isSetOf(ids, values)) {
+      return super.retainAll(values);
+    }
+    IdSet other = (IdSet) values;
+    int oldSize = size;
+    int count = 0;
+    int right = 0;
+    for (int left = 0; left < chunkCount; left++) {
+      while (right < other.chunkCount && other.keys[right] < keys[left]) {
+        right++;
+      }
+      if (right < other.chunkCount && other.keys[right] == keys[left]) {
+        Chunk chunk = chunks[left];
+        if (chunk != other.chunks[right]) {
+          chunk = writable(chunk);
+          chunk.and(other.chunks[right]);
+        }
+        if (chunk.cardinality > 0) {
+          keys[count] = keys[left];
+          chunks[count++] = chunk;
+        }
+      }
+    }
+    setChunks(keys, chunks, count);
+    return size != oldSize;
+  }
+
+  @Override public boolean removeAll(Collection<?> values) {
+    if (!isSetOf(ids, values)) {
+      boolean modified = false;
+      for (Object value : values) {
+        modified |= remove(value);
+      }
+      return modified;
+    }
+    if (values == this) {
+      boolean modified = size > 0;
+      clear();
+      return modified;
+    }
+    IdSet other = (IdSet) values;
+    int oldSize = size;
+    int count = 0;
+    int right = 0;
+    for (int left = 0; left < chunkCount; left++) {
+      while (right < other.chunkCount && other.keys[right] < keys[left]) {
+        right++;
+      }
+      Chunk chunk = chunks[left];
+      if (right < other.chunkCount && other.keys[right] == keys[left]) {
+        if (chunk == other.chunks[right]) {
+          continue;
+        }
+        chunk = writable(chunk);
+        chunk.andNot(other.chunks[right]);
+      }
+      if (chunk.cardinality > 0) {
+        keys[count] = keys[left];
+        chunks[count++] = chunk;
+      }
+    }
+    setChunks(keys, chunks, count);
+    return size != oldSize;
+  }
+
+  /**
+   * Iterates the members in order of their ordinals.
+   */
+  @Override public Iterator<Id> iterator() {
+    return new Iterator<Id>() {
+      private int chunkIndex;
+      // the index in an array chunk or the bit in a bitmap chunk of the next member
+      private int position = first(0, 0);
+      private Id last;
+
+      /**
+       * Returns the position of the first member of the chunks from chunkIndex on, starting at
+       * position start in chunkIndex, moving chunkIndex as needed.
+       */
+      private int first(int startChunk, int start) {
+        chunkIndex = startChunk;
+        while (chunkIndex < chunkCount) {
+          int result = chunks[chunkIndex].next(start);
+          if (result >= 0) {
+            return result;
+          }
+          chunkIndex++;
+          start = 0;
+        }
+        return -1;
+      }
+
+      @Override public boolean hasNext() {
+        return chunkIndex < chunkCount;
+      }
+
+      @Override public Id next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Chunk chunk = chunks[chunkIndex];
+        int low = chunk.low(position);
+        last = ids.getIdOfOrdinal((keys[chunkIndex] << 16) | low);
+        position = first(chunkIndex, position + 1);
+        return last;
+      }
+
+      @Override public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        int ordinal = last.getOrdinal() + 1;
+        IdSet.this.remove(last);
+        last = null;
+        // Removing may have moved the chunks, so find the next member again.
+        int index = indexOf(ordinal >>> 16);
+        if (index < 0) {
+          position = first(-index - 1, 0);
+        } else {
+          position = first(index, chunks[index].positionOf(ordinal & 0xFFFF));
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the index of the chunk with key, or -(insertion point) - 1 if there is none.
+   */
+  private int indexOf(int key) {
+    return Arrays.binarySearch(keys, 0, chunkCount, key);
+  }
+
+  /**
+   * Returns chunk, or a copy of it which may be changed if it is shared with another set.
+   */
+  private static Chunk writable(Chunk chunk) {
+    return chunk.shared ? chunk.copy() : chunk;
+  }
+
+  private int insertChunk(int index, int key, Chunk chunk) {
+    if (chunkCount == keys.length) {
+      keys = Arrays.copyOf(keys, chunkCount * 2);
+      chunks = Arrays.copyOf(chunks, chunkCount * 2);
+    }
+    System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+    System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+    keys[index] = key;
+    chunks[index] = chunk;
+    chunkCount++;
+    return index;
+  }
+
+  private void removeChunk(int index) {
+    System.arraycopy(keys, index + 1, keys, index, chunkCount - index - 1);
+    System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+    chunks[--chunkCount] = null;
+  }
+
+  private void setChunks(int[] newKeys, Chunk[] newChunks, int count) {
+    if (newChunks == chunks) {
+      Arrays.fill(chunks, count, chunkCount, null);
+    }
+    keys = newKeys;
+    chunks = newChunks;
+    chunkCount = count;
+    size = 0;
+    for (int index = 0; index < count; index++) {
+      size += chunks[index].cardinality;
+    }
+    if (keys.length == 0) {
+      keys = new int[4];
+      chunks = new Chunk[4];
+    }
+  }
+
+  /**
+   * The low 16 bits of the ordinals of the members with the same high 16 bits. Either array holds
+   * them sorted, or bitmap has a bit set for each. A shared chunk is never changed.
+   */
+  private static final class Chunk {
+    char[] array = new char[4];
+    long[] bitmap;
+    int cardinality;
+    boolean shared;
+
+    Chunk copy() {
+      Chunk result = new Chunk();
+      result.array = array == null ? null : Arrays.copyOf(array, Math.max(4, cardinality));
+      result.bitmap = bitmap == null ? null : bitmap.clone();
+      result.cardinality = cardinality;
+      return result;
+    }
+
+    boolean contains(int low) {
+      if (bitmap != null) {
+        return (bitmap[low >>> 6] & (1L << low)) != 0;
+      }
+      return Arrays.binarySearch(array, 0, cardinality, (char) low) >= 0;
+    }
+
+    boolean add(int low) {
+      if (bitmap != null) {
+        long bit = 1L << low;
+        if ((bitmap[low >>> 6] & bit) != 0) {
+          return false;
+        }
+        bitmap[low >>> 6] |= bit;
+        cardinality++;
+        return true;
+      }
+      int index = Arrays.binarySearch(array, 0, cardinality, (char) low);
+      if (index >= 0) {
+        return false;
+      }
+      if (cardinality == ARRAY_LIMIT) {
+        toBitmap();
+        return add(low);
+      }
+      index = -index - 1;
+      if (cardinality == array.length) {
+        array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, cardinality * 2));
+      }
+      System.arraycopy(array, index, array, index + 1, cardinality - index);
+      array[index] = (char) low;
+      cardinality++;
+      return true;
+    }
+
+    void remove(int low) {
+      if (bitmap != null) {
+        bitmap[low >>> 6] &= ~(1L << low);
+        cardinality--;
+        if (cardinality <= ARRAY_LIMIT / 2) {
+          toArray();
+        }
+        return;
+      }
+      int index = Arrays.binarySearch(array, 0, cardinality, (char) low);
+      System.arraycopy(array, index + 1, array, index, cardinality - index - 1);
+      cardinality--;
+    }
+
+    /**
+     * Returns the position of the first member at or after position start, or -1 if there is
+     * none. A position is an index into array, or a bit of bitmap.
+     */
+    int next(int start) {
+      if (bitmap == null) {
+        return start < cardinality ? start : -1;
+      }
+      int word = start >>> 6;
+      if (word >= BITMAP_WORDS) {
+        return -1;
+      }
+      long bits = bitmap[word] & (-1L << start);
+      while (bits == 0) {
+        if (++word == BITMAP_WORDS) {
+          return -1;
+        }
+        bits = bitmap[word];
+      }
+      return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Returns the low 16 bits of the member at position.
+     */
+    int low(int position) {
+      return bitmap == null ? array[position] : position;
+    }
+
+    /**
+     * Returns the position of the first member whose low bits are at least low.
+     */
+    int positionOf(int low) {
+      if (bitmap != null) {
+        return low;
+      }
+      int index = Arrays.binarySearch(array, 0, cardinality, (char) low);
+      return index >= 0 ? index : -index - 1;
+    }
+
+    void or(Chunk other) {
+      if (bitmap == null && other.bitmap == null
+          && cardinality + other.cardinality <= ARRAY_LIMIT) {
+        char[] result = new char[Math.max(4, cardinality + other.cardinality)];
+        int count = 0;
+        int left = 0;
+        int right = 0;
+        while (left < cardinality || right < other.cardinality) {
+          if (right == other.cardinality
+              || (left < cardinality && array[left] < other.array[right])) {
+            result[count++] = array[left++];
+          } else if (left == cardinality || other.array[right] < array[left]) {
+            result[count++] = other.array[right++];
+          } else {
+            result[count++] = array[left++];
+            right++;
+          }
+        }
+        array = result;
+        cardinality = count;
+        return;
+      }
+      if (bitmap == null) {
+        toBitmap();
+      }
+      if (other.bitmap != null) {
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+          bitmap[word] |= other.bitmap[word];
+        }
+      } else {
+        for (int index = 0; index < other.cardinality; index++) {
+          bitmap[other.array[index] >>> 6] |= 1L << other.array[index];
+        }
+      }
+      countBitmap();
+    }
+
+    void and(Chunk other) {
+      if (bitmap != null && other.bitmap != null) {
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+          bitmap[word] &= other.bitmap[word];
+        }
+        countBitmap();
+        if (cardinality <= ARRAY_LIMIT) {
+          toArray();
+        }
+        return;
+      }
+      // At least one side is a short array, so the result is too.
+      Chunk small = bitmap == null ? this : other;
+      Chunk large = small == this ? other : this;
+      char[] result = new char[Math.max(4, small.cardinality)];
+      int count = 0;
+      for (int index = 0; index < small.cardinality; index++) {
+        if (large.contains(small.array[index])) {
+          result[count++] = small.array[index];
+        }
+      }
+      array = result;
+      bitmap = null;
+      cardinality = count;
+    }
+
+    void andNot(Chunk other) {
+      if (bitmap == null) {
+        int count = 0;
+        for (int index = 0; index < cardinality; index++) {
+          if (!other.contains(array[index])) {
+            array[count++] = array[index];
+          }
+        }
+        cardinality = count;
+        return;
+      }
+      if (other.bitmap != null) {
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+          bitmap[word] &= ~other.bitmap[word];
+        }
+      } else {
+        for (int index = 0; index < other.cardinality; index++) {
+          bitmap[other.array[index] >>> 6] &= ~(1L << other.array[index]);
+        }
+      }
+      countBitmap();
+      if (cardinality <= ARRAY_LIMIT / 2) {
+        toArray();
+      }
+    }
+
+    private void countBitmap() {
+      int count = 0;
+      for (long word : bitmap) {
+        count += Long.bitCount(word);
+      }
+      cardinality = count;
+    }
+
+    private void toBitmap() {
+      bitmap = new long[BITMAP_WORDS];
+      for (int index = 0; index < cardinality; index++) {
+        bitmap[array[index] >>> 6] |= 1L << array[index];
+      }
+      array = null;
+    }
+
+    private void toArray() {
+      char[] result = new char[Math.max(4, cardinality)];
+      int count = 0;
+      for (int word = 0; word < BITMAP_WORDS; word++) {
+        for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+          result[count++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+        }
+      }
+      array = result;
+      bitmap = null;
+    }
+  }
+}
@@ -17,6 +17,7 @@ package codecleaver;
 
 import org.objectweb.asm.Type;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Set;
 
@@ -31,6 +32,7 @@ import java.util.Set;
 public class IdTable {
   // TODO(peterhal): use a Map<String, Id> to avoid allocations during lookup 
   public final HashMap<Id, Id> ids = new HashMap<Id, Id>();
+  private final ArrayList<Id> idsByOrdinal = new ArrayList<Id>();
   public final PackageId root;
   public final TypeId object;
 
@@ -46,6 +48,20 @@ public class IdTable {
     return ids.keySet();
   }
 
+  /**
+   * Returns the number of Ids created by this table. Ordinals range from 0 to size() - 1.
+   */
+  public int size() {
+    return idsByOrdinal.size();
+  }
+
+  /**
+   * Returns the Id with the given ordinal.
+   */
+  public Id getIdOfOrdinal(int ordinal) {
+    return idsByOrdinal.get(ordinal);
+  }
+
   /**
    * Get an existing or create a package Id.
    */
@@ -195,7 +211,9 @@ public class IdTable {
     if (ids.containsKey(newId)) {
       return (T) ids.get(newId);
     } else {
+      newId.setOrdinal(ids.size());
       ids.put(newId, newId);
+      idsByOrdinal.add(newId);
       newId.attachToParent();
       return newId;
     }
@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class InfoTable {
 
@@ -34,6 +35,41 @@ public class InfoTable {
   public final PackageInfo rootPackage;
   public final IdTable ids;
   private final HashMap<Id, Info> infosById = new HashMap<Id, Info>();
+  // the results of resolving method and field references. References which could not be resolved
+  // map to UNRESOLVED. Cleared whenever an info is added.
+  private final ConcurrentHashMap<Reference, Object> resolutions =
+      new ConcurrentHashMap<Reference, Object>();
+  private static final Object UNRESOLVED = new Object();
+
+  /**
+   * A method or field reference: its owner, name and descriptor.
+   */
+  private static final class Reference {
+    private final int owner;
+    private final String name;
+    private final String desc;
+    private final IdType type;
+
+    public Reference(TypeId owner, String name, String desc, IdType type) {
+      this.owner = owner.getOrdinal();
+      this.name = name;
+      this.desc = desc;
+      this.type = type;
+    }
+
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof Reference)) {
+        return false;
+      }
+      Reference reference = (Reference) other;
+      return owner == reference.owner && type == reference.type && name.equals(reference.name)
+          && desc.equals(reference.desc);
+    }
+
+    @Override public int hashCode() {
+      return (owner * 31 + name.hashCode()) * 31 + desc.hashCode();
+    }
+  }
 
   /**
    * Returns our best guess at the containing info of an id. If Id is a type contained in a package
@@ -163,10 +199,12 @@ public class InfoTable {
       TypeId id,
       ContainerInfo parent,
       int access,
+      int size,
       TypeId superId,
       TypeId[] interfaces,
       ImmutableSet<AnnotationInfo> annotations) {
-    TypeInfo result = new TypeInfo(file, id, parent, access, superId, interfaces, annotations);
+    TypeInfo result =
+        new TypeInfo(file, id, parent, access, size, superId, interfaces, annotations);
     add(result);
     return result;
   }
@@ -185,9 +223,9 @@ public class InfoTable {
    * Create a new MethodInfo and add it to this table. An info for id must not have been created
    * yet.
    */
-  public MethodInfo createMethod(MethodId id, TypeInfo parent, int access, String desc,
-      ImmutableSet<AnnotationInfo> annotations) {
-    MethodInfo result = new MethodInfo(id, parent, access, desc, annotations);
+  public MethodInfo createMethod(MethodId id, TypeInfo parent, int access, int codeLength,
+      String desc, ImmutableSet<AnnotationInfo> annotations) {
+    MethodInfo result = new MethodInfo(id, parent, access, codeLength, desc, annotations);
     add(result);
     return result;
   }
@@ -210,6 +248,9 @@ public class InfoTable {
       throw new IllegalArgumentException("Duplicate definition: " + info.id.toString());
     }
     infosById.put(info.id, info);
+    if (!resolutions.isEmpty()) {
+      resolutions.clear();
+    }
   }
 
   /**
@@ -285,13 +326,20 @@ public class InfoTable {
   /**
    * Resolves a field reference to an info. Searches typeId, super interfaces of typeId then super
    * classes of typeId. Returns null if the reference could not be resolved. See 5.4.3.2 Field
-   * Resolution of the JVM spec for details.
+   * Resolution of the JVM spec for details. Results, including failures, are cached until the next
+   * info is added.
    */
   public FieldInfo resolveField(TypeId typeId, String name, String desc) {
-    if (hasInfo(typeId)) {
-      return resolveField(getType(typeId), name, desc);
+    if (!hasInfo(typeId)) {
+      return null;
     }
-    return null;
+    Reference reference = new Reference(typeId, name, desc, IdType.Field);
+    Object result = resolutions.get(reference);
+    if (result == null) {
+      result = resolveField(getType(typeId), name, desc);
+      resolutions.put(reference, result == null ? UNRESOLVED : result);
+    }
+    return result == UNRESOLVED ? null : (FieldInfo) result;
   }
 
   /**
@@ -350,13 +398,20 @@ public class InfoTable {
   /**
    * Resolves a method reference to an info. Searches typeId, super classes of typeId and super
    * interfaces of typeId. Returns null if the reference could not be resolved. See 5.4.3.3 Method
-   * Resolution of the JVM spec for details.
+   * Resolution of the JVM spec for details. Results, including failures, are cached until the next
+   * info is added.
    */
   public MethodInfo resolveMethod(TypeId typeId, String name, String desc) {
-    if (hasInfo(typeId)) {
-      return resolveMethod(getType(typeId), name, desc);
+    if (!hasInfo(typeId)) {
+      return null;
     }
-    return null;
+    Reference reference = new Reference(typeId, name, desc, IdType.Method);
+    Object result = resolutions.get(reference);
+    if (result == null) {
+      result = resolveMethod(getType(typeId), name, desc);
+      resolutions.put(reference, result == null ? UNRESOLVED : result);
+    }
+    return result == UNRESOLVED ? null : (MethodInfo) result;
   }
 
   /**
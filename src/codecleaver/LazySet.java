@@ -0,0 +1,247 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import codecleaver.iterable.ConcatIterable;
+import codecleaver.iterable.FilteredIterable;
+import codecleaver.util.Func;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An unevaluated union, intersection or difference of sets. Members are found as the set is
+ * iterated, so counting or listing the result builds no set, and nested operations of the same
+ * kind are flattened into a single pass over all of their operands. Operands must not change.
+ */
+public abstract class LazySet extends AbstractSet<Id> {
+  protected final List<Set<Id>> operands;
+
+  private LazySet(List<Set<Id>> operands) {
+    this.operands = operands;
+  }
+
+  /**
+   * Returns the union of left and right.
+   */
+  public static LazySet union(Set<Id> left, Set<Id> right) {
+    List<Set<Id>> operands = new ArrayList<Set<Id>>();
+    addOperands(operands, left, Union.class);
+    addOperands(operands, right, Union.class);
+    return new Union(operands);
+  }
+
+  /**
+   * Returns the intersection of left and right.
+   */
+  public static LazySet intersection(Set<Id> left, Set<Id> right) {
+    List<Set<Id>> operands = new ArrayList<Set<Id>>();
+    addOperands(operands, left, Intersection.class);
+    addOperands(operands, right, Intersection.class);
+    return new Intersection(operands);
+  }
+
+  /**
+   * Returns the members of left which are not in right. Removing a union removes each of its
+   * operands in turn.
+   */
+  public static LazySet difference(Set<Id> left, Set<Id> right) {
+    List<Set<Id>> operands = new ArrayList<Set<Id>>();
+    if (left instanceof Difference) {
+      operands.addAll(((Difference) left).operands);
+    } else {
+      operands.add(left);
+    }
+    addOperands(operands, right, Union.class);
+    return new Difference(operands);
+  }
+
+  private static void addOperands(
+      List<Set<Id>> operands, Set<Id> value, Class<? extends LazySet> kind) {
+    if (kind.isInstance(value)) {
+      operands.addAll(((LazySet) value).operands);
+    } else {
+      operands.add(value);
+    }
+  }
+
+  /**
+   * Returns an upper bound on the size of this set without evaluating it.
+   */
+  protected abstract int estimatedSize();
+
+  /**
+   * Returns an upper bound on the size of value, which is its size unless it is unevaluated.
+   */
+  private static int sizeBound(Set<Id> value) {
+    return value instanceof LazySet ? ((LazySet) value).estimatedSize() : value.size();
+  }
+
+  /**
+   * Counts the members without building the set.
+   */
+  @Override public int size() {
+    int count = 0;
+    for (Iterator<Id> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+      count++;
+    }
+    return count;
+  }
+
+  @Override public boolean isEmpty() {
+    return !iterator().hasNext();
+  }
+
+  /**
+   * Returns the members of values which are in none of operands from index start to end.
+   */
+  private static Iterable<Id> without(
+      Iterable<Id> values, final List<Set<Id>> operands, final int start, final int end) {
+    if (start == end) {
+      return values;
+    }
+    return new FilteredIterable<Id>(values, new Func<Id, Boolean>() {
+
+      @Override public Boolean apply(Id value) {
+        for (int index = start; index < end; index++) {
+          if (operands.get(index).contains(value)) {
+            return false;
+          }
+        }
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Iterates each operand in turn, skipping members of the operands before it.
+   */
+  private static final class Union extends LazySet {
+
+    public Union(List<Set<Id>> operands) {
+      super(operands);
+    }
+
+    @Override public boolean contains(Object value) {
+      for (Set<Id> operand : operands) {
+        if (operand.contains(value)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override public Iterator<Id> iterator() {
+      Iterable<Id> result = operands.get(0);
+      for (int index = 1; index < operands.size(); index++) {
+        result = new ConcatIterable<Id>(result, without(operands.get(index), operands, 0, index));
+      }
+      return result.iterator();
+    }
+
+    @Override protected int estimatedSize() {
+      long result = 0;
+      for (Set<Id> operand : operands) {
+        result += sizeBound(operand);
+      }
+      return (int) Math.min(result, Integer.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Iterates the smallest operand, keeping members of all the others.
+   */
+  private static final class Intersection extends LazySet {
+
+    public Intersection(List<Set<Id>> operands) {
+      super(smallestFirst(operands));
+    }
+
+    private static List<Set<Id>> smallestFirst(List<Set<Id>> operands) {
+      Collections.sort(operands, new Comparator<Set<Id>>() {
+
+        @Override public int compare(Set<Id> left, Set<Id> right) {
+          int leftSize = sizeBound(left);
+          int rightSize = sizeBound(right);
+          return leftSize < rightSize ? -1 : (leftSize == rightSize ? 0 : 1);
+        }
+      });
+      return operands;
+    }
+
+    @Override public boolean contains(Object value) {
+      for (Set<Id> operand : operands) {
+        if (!operand.contains(value)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override public Iterator<Id> iterator() {
+      return new FilteredIterable<Id>(operands.get(0), new Func<Id, Boolean>() {
+
+        @Override public Boolean apply(Id value) {
+          for (int index = 1; index < operands.size(); index++) {
+            if (!operands.get(index).contains(value)) {
+              return false;
+            }
+          }
+          return true;
+        }
+      }).iterator();
+    }
+
+    @Override protected int estimatedSize() {
+      return sizeBound(operands.get(0));
+    }
+  }
+
+  /**
+   * Iterates the first operand, skipping members of the others.
+   */
+  private static final class Difference extends LazySet {
+
+    public Difference(List<Set<Id>> operands) {
+      super(operands);
+    }
+
+    @Override public boolean contains(Object value) {
+      if (!operands.get(0).contains(value)) {
+        return false;
+      }
+      for (int index = 1; index < operands.size(); index++) {
+        if (operands.get(index).contains(value)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override public Iterator<Id> iterator() {
+      return without(operands.get(0), operands, 1, operands.size()).iterator();
+    }
+
+    @Override protected int estimatedSize() {
+      return sizeBound(operands.get(0));
+    }
+  }
+}
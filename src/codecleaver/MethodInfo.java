@@ -20,12 +20,15 @@ import com.google.common.collect.ImmutableSet;
 public class MethodInfo extends MemberInfo {
   @SuppressWarnings("hiding")
   public final MethodId id;
+  // the length of the byte code of the method, 0 if it has no code
+  public final int codeLength;
 
-  public MethodInfo(MethodId id, TypeInfo parent, int access, String desc,
+  public MethodInfo(MethodId id, TypeInfo parent, int access, int codeLength, String desc,
       ImmutableSet<AnnotationInfo> annotations) {
     super(id, parent, access, desc, annotations);
 
     this.id = id;
+    this.codeLength = codeLength;
   }
 
   public String getName() {
@@ -0,0 +1,269 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import codecleaver.util.DirectedGraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds the override edges to an inheritance graph: an edge from each non-static, non-initializer
+ * method to every method with the same name and descriptor in a super type of its containing type.
+ *
+ * <p>Types are visited super types first. Each type inherits from its super types a table from
+ * name and descriptor to the methods declared in its super types, so each method finds the
+ * methods it overrides with a single lookup. Only names and descriptors which are declared in
+ * more than one type are kept in the tables. Types in or below a cycle in the type hierarchy
+ * fall back to searching all of their super types in the graph.
+ */
+final class OverrideBuilder {
+  private final InfoTable infos;
+  private final DirectedGraph<Id> graph;
+  // the methods declared by each type, in the order of the info table
+  private final HashMap<TypeId, List<MethodInfo>> methods = new HashMap<TypeId, List<MethodInfo>>();
+  // the number of types declaring each name and descriptor
+  private final HashMap<String, Integer> declarationCounts = new HashMap<String, Integer>();
+
+  public OverrideBuilder(InfoTable infos, DirectedGraph<Id> graph) {
+    this.infos = infos;
+    this.graph = graph;
+  }
+
+  /**
+   * Adds the override edges for methods to the graph. The graph must already contain the edges
+   * from each type in types to its super types.
+   */
+  public void addEdges(Iterable<Info> types, Iterable<Info> methodInfos) {
+    for (Info info : methodInfos) {
+      MethodInfo method = (MethodInfo) info;
+      TypeId type = (TypeId) method.id.getParent();
+      List<MethodInfo> declared = methods.get(type);
+      if (declared == null) {
+        declared = new ArrayList<MethodInfo>();
+        methods.put(type, declared);
+      }
+      declared.add(method);
+      String signature = signatureOf(method);
+      Integer count = declarationCounts.get(signature);
+      declarationCounts.put(signature, count == null ? 1 : count + 1);
+    }
+
+    // order the types so that every type follows its super types
+    HashMap<TypeId, LinkedHashSet<TypeId>> supers = new HashMap<TypeId, LinkedHashSet<TypeId>>();
+    HashMap<TypeId, List<TypeId>> subs = new HashMap<TypeId, List<TypeId>>();
+    LinkedHashMap<TypeId, Integer> pendingSupers = new LinkedHashMap<TypeId, Integer>();
+    ArrayList<TypeId> order = new ArrayList<TypeId>();
+    for (Info info : types) {
+      TypeInfo type = (TypeInfo) info;
+      LinkedHashSet<TypeId> typeSupers = supersOf(type);
+      supers.put(type.id, typeSupers);
+      pendingSupers.put(type.id, typeSupers.size());
+      for (TypeId superType : typeSupers) {
+        List<TypeId> superSubs = subs.get(superType);
+        if (superSubs == null) {
+          superSubs = new ArrayList<TypeId>();
+          subs.put(superType, superSubs);
+        }
+        superSubs.add(type.id);
+      }
+      if (typeSupers.isEmpty()) {
+        order.add(type.id);
+      }
+    }
+    for (int index = 0; index < order.size(); index++) {
+      List<TypeId> typeSubs = subs.get(order.get(index));
+      if (typeSubs != null) {
+        for (TypeId sub : typeSubs) {
+          int pending = pendingSupers.get(sub) - 1;
+          pendingSupers.put(sub, pending);
+          if (pending == 0) {
+            order.add(sub);
+          }
+        }
+      }
+    }
+
+    // the inherited table of each type whose sub types have not all been visited yet
+    HashMap<TypeId, Map<String, List<MethodId>>> tables =
+        new HashMap<TypeId, Map<String, List<MethodId>>>();
+    HashMap<TypeId, Integer> pendingSubs = new HashMap<TypeId, Integer>();
+    for (TypeId type : order) {
+      Map<String, List<MethodId>> table = inheritedTable(supers.get(type), tables, pendingSubs);
+      List<TypeId> typeSubs = subs.get(type);
+      if (typeSubs != null) {
+        tables.put(type, table);
+        pendingSubs.put(type, typeSubs.size());
+      }
+      for (MethodInfo method : methodsOf(type)) {
+        if (canOverride(method)) {
+          List<MethodId> overridden = table.get(signatureOf(method));
+          if (overridden != null) {
+            for (MethodId overriddenMethod : overridden) {
+              graph.addEdge(method.id, overriddenMethod);
+            }
+          }
+        }
+      }
+      pendingSupers.remove(type);
+    }
+
+    // types which are in or below a cycle in the type hierarchy
+    for (TypeId type : pendingSupers.keySet()) {
+      for (MethodInfo method : methodsOf(type)) {
+        if (canOverride(method)) {
+          addEdgesBySearch(method);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the table of methods declared in the super types of a type, merged from the tables of
+   * supers. Releases the table of each super type once all of its sub types have been visited.
+   */
+  private Map<String, List<MethodId>> inheritedTable(LinkedHashSet<TypeId> supers,
+      HashMap<TypeId, Map<String, List<MethodId>>> tables, HashMap<TypeId, Integer> pendingSubs) {
+    Map<String, List<MethodId>> result = null;
+    boolean isShared = false;
+    for (TypeId superType : supers) {
+      Map<String, List<MethodId>> superTable = tables.get(superType);
+      int pending = pendingSubs.get(superType) - 1;
+      if (pending == 0) {
+        tables.remove(superType);
+        pendingSubs.remove(superType);
+      } else {
+        pendingSubs.put(superType, pending);
+      }
+
+      if (result == null && !declaresInherited(superType)) {
+        // share the table of the only super type which adds nothing
+        result = superTable;
+        isShared = true;
+        continue;
+      }
+      if (result == null || isShared) {
+        result = copyOf(result);
+        isShared = false;
+      }
+      for (Map.Entry<String, List<MethodId>> entry : superTable.entrySet()) {
+        for (MethodId method : entry.getValue()) {
+          addToTable(result, entry.getKey(), method);
+        }
+      }
+      for (MethodInfo method : methodsOf(superType)) {
+        String signature = signatureOf(method);
+        if (declarationCounts.get(signature) > 1) {
+          addToTable(result, signature, method.id);
+        }
+      }
+    }
+    return result == null ? new HashMap<String, List<MethodId>>() : result;
+  }
+
+  private static Map<String, List<MethodId>> copyOf(Map<String, List<MethodId>> table) {
+    Map<String, List<MethodId>> result = new HashMap<String, List<MethodId>>();
+    if (table != null) {
+      for (Map.Entry<String, List<MethodId>> entry : table.entrySet()) {
+        result.put(entry.getKey(), new ArrayList<MethodId>(entry.getValue()));
+      }
+    }
+    return result;
+  }
+
+  private static void addToTable(Map<String, List<MethodId>> table, String signature,
+      MethodId method) {
+    List<MethodId> entry = table.get(signature);
+    if (entry == null) {
+      entry = new ArrayList<MethodId>(2);
+      table.put(signature, entry);
+    }
+    if (!entry.contains(method)) {
+      entry.add(method);
+    }
+  }
+
+  /**
+   * Does type declare a method which may be overridden in another type.
+   */
+  private boolean declaresInherited(TypeId type) {
+    for (MethodInfo method : methodsOf(type)) {
+      if (declarationCounts.get(signatureOf(method)) > 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds an edge from method to the methods with the same name and descriptor in every type
+   * reachable from its containing type in the graph.
+   */
+  private void addEdgesBySearch(MethodInfo method) {
+    Id containingType = method.id.getParent();
+    for (Id inheritedType : graph.reachableFrom(containingType)) {
+      if (inheritedType != containingType) {
+        MethodInfo overriddenMethod =
+            infos.lookupMethod((TypeId) inheritedType, method.getName(), method.desc);
+        if (overriddenMethod != null) {
+          graph.addEdge(method.id, overriddenMethod.id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the super class and interfaces of type which have infos. Interfaces also have Object
+   * as a super type.
+   */
+  private LinkedHashSet<TypeId> supersOf(TypeInfo type) {
+    LinkedHashSet<TypeId> result = new LinkedHashSet<TypeId>();
+    if (type.superId != null) {
+      result.add(type.superId);
+    }
+    for (TypeId iface : type.interfaces) {
+      result.add(iface);
+    }
+    if (type.isInterface()) {
+      result.add(infos.ids.object);
+    }
+    result.remove(type.id);
+    for (Iterator<TypeId> iterator = result.iterator(); iterator.hasNext();) {
+      if (!infos.hasInfo(iterator.next())) {
+        iterator.remove();
+      }
+    }
+    return result;
+  }
+
+  private List<MethodInfo> methodsOf(TypeId type) {
+    List<MethodInfo> result = methods.get(type);
+    return result == null ? new ArrayList<MethodInfo>() : result;
+  }
+
+  private static boolean canOverride(MethodInfo method) {
+    return !method.isStatic() && !method.isInitializer();
+  }
+
+  private static String signatureOf(MethodInfo method) {
+    return method.getName() + method.desc;
+  }
+}
@@ -128,6 +128,10 @@ public class PredefinedSet implements HelpTopic {
   public static final PredefinedSet UNEXTENSIBLE_PACKAGES 
     = new PredefinedSet("UnextensiblePackages",
         "A mutable set used to determine which package privates are visible externally.");
+  public static final PredefinedSet ENTRY_POINTS 
+    = new PredefinedSet("EntryPoints",
+        "A mutable set of the symbols from which exclusive dependencies and retained counts are "
+          + "computed. If the set does not exist Externals is used.");
   public static final PredefinedSet INITIALIZERS 
     = new PredefinedSet("Initializers",
         "All methods which are instance initializers. Aka constructors.");
@@ -16,6 +16,7 @@
 package codecleaver;
 
 import codecleaver.iterable.Sequence;
+import codecleaver.util.DirectedGraph;
 import codecleaver.util.IntegerReference;
 import codecleaver.util.Pair;
 
@@ -30,8 +31,11 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -214,7 +218,7 @@ public final class Program {
         return;
       }
 
-      state.assignSet(setName.value, Sequence.createSet(values));
+      state.assignSet(setName.value, state.newSet(values));
     }
   }
 
@@ -301,6 +305,18 @@ public final class Program {
       case cd:
         doCd(scanner);
         break;
+      case cacheLimit:
+        doCacheLimit(scanner);
+        break;
+      case parallelism:
+        doParallelism(scanner);
+        break;
+      case dispatch:
+        doDispatch(scanner);
+        break;
+      case diff:
+        doDiff(scanner);
+        break;
       default:
         if (!ensureLoaded()) {
           return;
@@ -318,6 +334,30 @@ public final class Program {
           case info:
             doInfo(scanner);
             break;
+          case cycles:
+            doCycles(scanner);
+            break;
+          case retained:
+            doRetained(scanner);
+            break;
+          case weight:
+            doWeight(scanner);
+            break;
+          case impact:
+            doImpact(scanner);
+            break;
+          case partition:
+            doPartition(scanner);
+            break;
+          case top:
+            doTop(scanner);
+            break;
+          case reaches:
+            doReaches(scanner);
+            break;
+          case why:
+            doWhy(scanner);
+            break;
           case create:
             doCreate(scanner);
             break;
@@ -345,6 +385,12 @@ public final class Program {
           case writeList:
             doWriteList(scanner);
             break;
+          case exportGraph:
+            doExportGraph(scanner);
+            break;
+          case jarMatrix:
+            doJarMatrix(scanner);
+            break;
           case readList:
             doReadList(scanner);
             break;
@@ -377,24 +423,28 @@ public final class Program {
   }
 
   private void doFrom(CommandScanner scanner) {
+    Granularity granularity = scanner.getOptionalGranularity();
     Iterable<Id> from = scanner.getValue();
+    Iterable<Id> to = scanner.isAtEnd() ? Sequence.<Id>empty() : scanner.getValue();
     scanner.ensureEmpty();
     if (hadError()) {
       return;
     }
 
-    ArrayList<ArrayList<Id>> distances = state.getDistancesFrom(from);
+    ArrayList<ArrayList<Id>> distances = state.getDistancesFrom(from, to, granularity);
     doPrintDistances(distances);
   }
 
   private void doTo(CommandScanner scanner) {
+    Granularity granularity = scanner.getOptionalGranularity();
     Iterable<Id> to = scanner.getValue();
+    Iterable<Id> from = scanner.isAtEnd() ? Sequence.<Id>empty() : scanner.getValue();
     scanner.ensureEmpty();
     if (hadError()) {
       return;
     }
 
-    ArrayList<ArrayList<Id>> distances = state.getDistancesTo(to);
+    ArrayList<ArrayList<Id>> distances = state.getDistancesTo(to, from, granularity);
     doPrintDistances(distances);
   }
 
@@ -410,16 +460,18 @@ public final class Program {
   }
 
   private void doMove(CommandScanner scanner) {
-    HashSet<Id> from = scanner.getMutableSet();
-    HashSet<Id> to = scanner.getMutableSet();
+    IdentifierToken from = scanner.getMutableSetName();
+    IdentifierToken to = scanner.getMutableSetName();
     Iterable<Id> values = scanner.getValue();
     scanner.ensureEmpty();
     if (hadError()) {
       return;
     }
 
-    Sequence.removeAll(from, values);
-    Sequence.addAll(to, values);
+    // values may be the from set, which is changed before values is added to the to set
+    values = state.newSet(values);
+    state.removeFromSet(from.value, values);
+    state.addToSet(to.value, values);
   }
 
   private void doAssign(CommandScanner scanner) {
@@ -430,7 +482,7 @@ public final class Program {
       return;
     }
 
-    state.assignSet(setName.value, Sequence.createSet(values));
+    state.assignSet(setName.value, state.newSet(values));
   }
 
   private boolean validateMutableSetName(IdentifierToken setName) {
@@ -442,25 +494,25 @@ public final class Program {
   }
 
   private void doRemove(CommandScanner scanner) {
-    HashSet<Id> set = scanner.getMutableSet();
+    IdentifierToken set = scanner.getMutableSetName();
     Iterable<Id> values = scanner.getValue();
     scanner.ensureEmpty();
     if (hadError()) {
       return;
     }
 
-    Sequence.removeAll(set, values);
+    state.removeFromSet(set.value, values);
   }
 
   private void doAdd(CommandScanner scanner) {
-    HashSet<Id> set = scanner.getMutableSet();
+    IdentifierToken set = scanner.getMutableSetName();
     Iterable<Id> values = scanner.getValue();
     scanner.ensureEmpty();
     if (hadError()) {
       return;
     }
 
-    Sequence.addAll(set, values);
+    state.addToSet(set.value, values);
   }
 
   private void doDelete(CommandScanner scanner) {
@@ -595,6 +647,212 @@ public final class Program {
     }
   }
   
+  private void doCacheLimit(CommandScanner scanner) {
+    Integer megabytes = scanner.getInteger("megabytes");
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    state.setClosureCacheLimit(megabytes);
+  }
+
+  private void doParallelism(CommandScanner scanner) {
+    Integer threads = scanner.getInteger("thread count", 1, 1024);
+    Integer threshold = scanner.getOptionalInteger("frontier size", 1, Integer.MAX_VALUE);
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    DirectedGraph.setParallelism(threads,
+        threshold == null ? DirectedGraph.DEFAULT_FRONTIER_THRESHOLD : threshold);
+  }
+
+  private void doDispatch(CommandScanner scanner) {
+    DispatchMode mode = scanner.getDispatchMode();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    state.setDispatchMode(mode);
+  }
+
+  private void doReaches(CommandScanner scanner) {
+    Iterable<Id> from = scanner.getValue();
+    Iterable<Id> to = scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    println(state.getReaches(from, to));
+  }
+
+  private void doWhy(CommandScanner scanner) {
+    Iterable<Id> from = scanner.getValue();
+    Iterable<Id> to = scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    List<Id> path = state.getShortestPath(from, to);
+    if (path == null) {
+      println("No dependency path found.");
+      return;
+    }
+    for (Id id : path) {
+      println(id);
+    }
+  }
+
+  private void doCycles(CommandScanner scanner) {
+    Granularity granularity = scanner.getGranularity();
+    Iterable<Id> values = scanner.isAtEnd() ? null : scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    List<Set<Id>> cycles = state.getCycles(granularity, values);
+    if (cycles.isEmpty()) {
+      println("No cycles found.");
+      return;
+    }
+    int index = 0;
+    for (Set<Id> cycle : cycles) {
+      index++;
+      println(String.format("Cycle %s (%s %s)", index, cycle.size(), granularity));
+      doPrintSortedStrings(cycle);
+    }
+  }
+
+  private void doWeight(CommandScanner scanner) {
+    Iterable<Id> values = scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    int types = 0;
+    long classBytes = 0;
+    long codeBytes = 0;
+    for (Id id : state.newSet(values)) {
+      Info info = state.getInfos().getOptionalInfo(id);
+      if (info instanceof TypeInfo) {
+        types++;
+        classBytes += ((TypeInfo) info).size;
+      } else if (info instanceof MethodInfo) {
+        codeBytes += ((MethodInfo) info).codeLength;
+      }
+    }
+    println("Types: %d", types);
+    println("Class File Bytes: %d", classBytes);
+    println("Code Bytes: %d", codeBytes);
+  }
+
+  private void doImpact(CommandScanner scanner) {
+    Integer count = scanner.getInteger("count");
+    Integer precision = scanner.getOptionalInteger("precision from 4 to 16", 4, 16);
+    Iterable<Id> values = scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    IdSet set = state.newSet(values);
+    if (precision == null) {
+      precision = State.DEFAULT_ESTIMATE_PRECISION;
+    }
+    final Map<Id, Long> from = state.getEstimatedTransitiveFromCounts(set, precision);
+    Map<Id, Long> to = state.getEstimatedTransitiveToCounts(set, precision);
+    List<Id> ranked = new ArrayList<Id>(set);
+    Collections.sort(ranked, new Comparator<Id>() {
+
+      @Override public int compare(Id left, Id right) {
+        int result = from.get(right).compareTo(from.get(left));
+        return result != 0 ? result : left.toString().compareTo(right.toString());
+      }
+    });
+    for (Id id : ranked.subList(0, Math.min(count, ranked.size()))) {
+      println(String.format("%s %s %s", from.get(id), to.get(id), id));
+    }
+  }
+
+  private void doTop(CommandScanner scanner) {
+    Integer count = scanner.getInteger("count");
+    Degree degree = scanner.getOptionalDegree();
+    Granularity granularity = scanner.getOptionalGranularity();
+    Iterable<Id> values = scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    if (degree == null) {
+      degree = Degree.Out;
+    }
+    for (Pair<Id, Long> entry : state.getTopDegrees(values, count, degree, granularity)) {
+      println(String.format("%s %s", entry.second, entry.first));
+    }
+  }
+
+  private void doPartition(CommandScanner scanner) {
+    Integer parts = scanner.getInteger("number of parts from 1 to 1000", 1, 1000);
+    IdentifierToken prefix = scanner.getWord("set name prefix");
+    Iterable<Id> values = scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    // The user defined set prefixNPinned, if it exists, pins its types to part N.
+    List<Iterable<Id>> pinned = new ArrayList<Iterable<Id>>();
+    for (int part = 1; part <= parts; part++) {
+      String name = prefix.value + part;
+      if (!state.isValidMutableSetName(name)) {
+        reportError(prefix, "'%s' is not a valid set name", name);
+        return;
+      }
+      String pinnedName = name + "Pinned";
+      pinned.add(state.hasSet(pinnedName) ? state.getSet(pinnedName) : Sequence.<Id>empty());
+    }
+
+    Pair<List<IdSet>, Long> partition = state.getPartition(values, parts, pinned);
+    for (int part = 1; part <= parts; part++) {
+      IdSet types = partition.first.get(part - 1);
+      IdSet symbols = state.newSet();
+      for (Id type : types) {
+        symbols.add(type);
+        // nested types are partitioned on their own
+        for (Id member : type.getChildren()) {
+          if (!(member instanceof TypeId)) {
+            symbols.add(member);
+          }
+        }
+      }
+      state.assignSet(prefix.value + part, symbols);
+      println("%s%d: %d types, %d symbols", prefix.value, part, types.size(), symbols.size());
+    }
+    println("Dependencies between parts: %d", partition.second);
+  }
+
+  private void doRetained(CommandScanner scanner) {
+    Integer count = scanner.getInteger("count");
+    Iterable<Id> values = scanner.getValue();
+    scanner.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    List<Pair<Id, Integer>> retained = state.getRetainedCounts(values);
+    for (Pair<Id, Integer> entry : retained.subList(0, Math.min(count, retained.size()))) {
+      println(String.format("%s %s", entry.second, entry.first));
+    }
+  }
+
   private static String objectToString(Object value) {
     if (value == null) {
       return "null";
@@ -642,6 +900,10 @@ public final class Program {
         println("Interface: %s", iface);
       }
       println("File: %s", type.file);
+      println("Size: %d", type.size);
+    }
+    if (info instanceof MethodInfo) {
+      println("Code Length: %d", ((MethodInfo) info).codeLength);
     }
     
     int index = 0;
@@ -741,7 +1003,7 @@ public final class Program {
     }
 
     if (openFileOrDirectory(fileOrDirectoryName)) {
-      HashSet<Id> values = new HashSet<Id>();
+      IdSet values = state.newSet();
       for (String fileName : jarsOfFileOrDirectory(adjustFileName(fileOrDirectoryName))) {
         values.addAll(state.getSet(fileName));
       }
@@ -866,6 +1128,126 @@ public final class Program {
     }
   }
 
+  private void doExportGraph(CommandScanner arguments) {
+    IdentifierToken fileName = arguments.getFileName();
+    ExportFormat format = arguments.getExportFormat();
+    boolean reduced = arguments.getOptionalKeyword("reduced");
+    Granularity granularity = arguments.getOptionalGranularity();
+    Iterable<Id> set = arguments.getValue();
+    arguments.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    String fileNameValue = adjustFileName(fileName);
+    try {
+      state.exportGraph(fileNameValue, format, set, granularity, reduced);
+    } catch (IOException e) {
+      reportError(fileName, String.format("Error '%s' writing to file:'%s'", e, fileNameValue));
+    }
+  }
+
+  private void doJarMatrix(CommandScanner arguments) {
+    boolean transitive = false;
+    if (!arguments.getOptionalKeyword("direct")) {
+      transitive = arguments.getOptionalKeyword("transitive");
+    }
+    IdentifierToken fileName = arguments.isAtEnd() ? null : arguments.getFileName();
+    arguments.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    List<String> files = new ArrayList<String>();
+    Iterables.addAll(files, state.getFiles());
+    long[][] matrix = state.getFileMatrix(transitive);
+    if (fileName != null) {
+      List<String> lines = new ArrayList<String>();
+      StringBuilder header = new StringBuilder("from");
+      for (String file : files) {
+        header.append(',').append(file);
+      }
+      lines.add(header.toString());
+      for (int from = 0; from < files.size(); from++) {
+        StringBuilder line = new StringBuilder(files.get(from));
+        for (long count : matrix[from]) {
+          line.append(',').append(count);
+        }
+        lines.add(line.toString());
+      }
+      writeLinesToFile(fileName, lines);
+      return;
+    }
+
+    // Number the files, then print a row for each file the dependencies come from and a column for
+    // each file they go to.
+    int width = Integer.toString(files.size()).length();
+    for (long[] row : matrix) {
+      for (long count : row) {
+        width = Math.max(width, Long.toString(count).length());
+      }
+    }
+    String column = " %" + width + "s";
+    StringBuilder header = new StringBuilder(String.format(column, ""));
+    for (int index = 0; index < files.size(); index++) {
+      println("%s %s", index + 1, files.get(index));
+      header.append(String.format(column, index + 1));
+    }
+    println("%s", header);
+    for (int from = 0; from < files.size(); from++) {
+      StringBuilder line = new StringBuilder(String.format(column, from + 1));
+      for (long count : matrix[from]) {
+        line.append(String.format(column, count));
+      }
+      println("%s", line);
+    }
+  }
+
+  private void doDiff(CommandScanner arguments) {
+    IdentifierToken beforeName = arguments.getFileName();
+    IdentifierToken afterName = arguments.getFileName();
+    Expression roots = arguments.isAtEnd() ? null : arguments.getExpression();
+    arguments.ensureEmpty();
+    if (hadError()) {
+      return;
+    }
+
+    String beforeFile = adjustFileName(beforeName);
+    String afterFile = adjustFileName(afterName);
+    State before;
+    State after;
+    try {
+      before = state.openVersion(beforeFile);
+      after = state.openVersion(afterFile);
+    } catch (StateException e) {
+      reportError("'%s' reading jar file '%s'.", e.exception, e.fileName);
+      return;
+    }
+
+    GraphDiff diff = new GraphDiff(before, beforeFile, after, afterFile);
+    printDiff("Added Symbols", diff.getAddedSymbols());
+    printDiff("Removed Symbols", diff.getRemovedSymbols());
+    printDiff("Added Dependencies", diff.getAddedDependencies());
+    printDiff("Removed Dependencies", diff.getRemovedDependencies());
+    if (roots != null) {
+      Iterable<Id> beforeRoots = ExpressionEvaluator.eval(currentErrorReporter, before, roots);
+      Iterable<Id> afterRoots = ExpressionEvaluator.eval(currentErrorReporter, after, roots);
+      if (hadError()) {
+        return;
+      }
+      IdSet beforeClosure = before.newSet(before.getTransitiveFrom(beforeRoots, 0, null));
+      IdSet afterClosure = after.newSet(after.getTransitiveFrom(afterRoots, 0, null));
+      println("Closure Size: %d -> %d", beforeClosure.size(), afterClosure.size());
+      printDiff("Added To Closure", GraphDiff.missingNames(afterClosure, beforeClosure));
+      printDiff("Removed From Closure", GraphDiff.missingNames(beforeClosure, afterClosure));
+    }
+  }
+
+  private void printDiff(String title, List<String> names) {
+    println("%s (%d)", title, names.size());
+    doPrintSortedStrings(names);
+  }
+
   private void doReadList(CommandScanner arguments) {
     final IdentifierToken fileName = arguments.getFileName();
     IdentifierToken setName = arguments.getWord("new set name");
@@ -887,7 +1269,7 @@ public final class Program {
     ErrorReporter oldReporter = currentErrorReporter;
     boolean hadError = false;
     final IntegerReference lineNumber = new IntegerReference();
-    HashSet<Id> values = new HashSet<Id>();
+    IdSet values = state.newSet();
     try {
       currentErrorReporter =
           new ErrorReporter() {
@@ -904,7 +1286,10 @@ public final class Program {
       for (String line : lines) {
         lineNumber.value++;
         println(line);
-        values.add(parseId(line));
+        Id id = parseId(line);
+        if (id != null) {
+          values.add(id);
+        }
         if (firstLine && currentErrorReporter.hadError()) {
           break;
         }
@@ -936,7 +1321,7 @@ public final class Program {
     }
 
     // input file must contain the entire whitelist
-    HashSet<Id> inputSet = state.getSet(inputName.value);
+    IdSet inputSet = state.getSet(inputName.value);
     for (Id missingId : state.getMinus(whiteList, inputSet)) {
       reportError(inputName, "File '%s' does not contain '%s'.", inputName, missingId);
     }
@@ -0,0 +1,109 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver;
+
+import codecleaver.util.DirectedGraph;
+import codecleaver.util.EdgeVisitor;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * The dependency graph with each symbol replaced by its enclosing package or type. An edge from
+ * A to B exists if any symbol in A depends on any symbol in B. Each edge records the kinds of the
+ * dependencies it summarizes and its multiplicity: the number of symbol level dependencies
+ * between A and B. Dependencies within a single package or type are dropped.
+ */
+public final class RollupGraph {
+  public final Granularity granularity;
+  public final DirectedGraph<Id> graph = new DirectedGraph<Id>();
+  private final HashMap<Id, HashMap<Id, int[]>> multiplicities =
+      new HashMap<Id, HashMap<Id, int[]>>();
+
+  /**
+   * Builds the rollup of dependencies at granularity in a single pass over its edges.
+   */
+  public RollupGraph(DirectedGraph<Id> dependencies, final Granularity granularity) {
+    this.granularity = granularity;
+    dependencies.visitEdges(new EdgeVisitor<Id>() {
+
+      @Override public void visitEdge(Id source, Id destination, int kinds) {
+        Id sourceRollup = granularity.rollup(source);
+        Id destinationRollup = granularity.rollup(destination);
+        if (sourceRollup != null && destinationRollup != null
+            && sourceRollup != destinationRollup) {
+          graph.addEdge(sourceRollup, destinationRollup, kinds);
+          multiplicityOf(sourceRollup, destinationRollup)[0]++;
+        }
+      }
+    });
+    graph.computeComponents();
+  }
+
+  private int[] multiplicityOf(Id source, Id destination) {
+    HashMap<Id, int[]> edges = multiplicities.get(source);
+    if (edges == null) {
+      edges = new HashMap<Id, int[]>();
+      multiplicities.put(source, edges);
+    }
+    int[] result = edges.get(destination);
+    if (result == null) {
+      result = new int[1];
+      edges.put(destination, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of symbol level dependencies from source to destination.
+   */
+  public int getMultiplicity(Id source, Id destination) {
+    HashMap<Id, int[]> edges = multiplicities.get(source);
+    int[] result = edges == null ? null : edges.get(destination);
+    return result == null ? 0 : result[0];
+  }
+
+  /**
+   * Returns the number of symbol level dependencies leaving id, or entering it if incoming.
+   */
+  public long getWeightedDegree(Id id, boolean incoming) {
+    long result = 0;
+    if (incoming) {
+      for (Id source : graph.inEdgesOfVertex(id)) {
+        result += getMultiplicity(source, id);
+      }
+    } else {
+      for (Id destination : graph.outEdgesOfVertex(id)) {
+        result += getMultiplicity(id, destination);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the packages or types containing values.
+   */
+  public Iterable<Id> rollup(Iterable<Id> values) {
+    LinkedHashSet<Id> result = new LinkedHashSet<Id>();
+    for (Id value : values) {
+      Id rollup = granularity.rollup(value);
+      if (rollup != null) {
+        result.add(rollup);
+      }
+    }
+    return result;
+  }
+}
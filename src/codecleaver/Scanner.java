@@ -133,11 +133,13 @@ public final class Scanner {
   }
 
   /**
-   * Scan the next token. If an identifier is found, use the file name scanning rules.
+   * Scan the next token. If an identifier is found, use the file name scanning rules. Tokens which
+   * have been peeked but not consumed are discarded and scanned again.
    */
   public Token scanFileName() {
     if (!currentTokens.isEmpty()) {
-      throw new IllegalArgumentException();
+      index = currentTokens.get(0).startIndex;
+      currentTokens.clear();
     }
     return scanToken(IdentifierScanType.FileName);
   }
@@ -226,17 +228,11 @@ public final class Scanner {
       case '=':
         return new Token(TokenType.Assign, beginToken, index);
       case '<':
-        if (peekChar() == '*') {
-          nextChar();
-          return new Token(TokenType.TransitiveFrom, beginToken, index);
-        }
-        return new Token(TokenType.From, beginToken, index);
+        return scanGraphOperator(
+            beginToken, TokenType.From, TokenType.TransitiveFrom, TokenType.BoundedFrom);
       case '>':
-        if (peekChar() == '*') {
-          nextChar();
-          return new Token(TokenType.TransitiveTo, beginToken, index);
-        }
-        return new Token(TokenType.To, beginToken, index);
+        return scanGraphOperator(
+            beginToken, TokenType.To, TokenType.TransitiveTo, TokenType.BoundedTo);
       case '[':
         if (peekChar() == '*') {
           nextChar();
@@ -257,6 +253,8 @@ public final class Scanner {
         return new Token(TokenType.Expand, beginToken, index);
       case '*':
         return new Token(TokenType.TransitiveExpand, beginToken, index);
+      case '~':
+        return new Token(TokenType.Exclusive, beginToken, index);
       case '@':
         return new Token(TokenType.At, beginToken, index);
       case ',':
@@ -320,6 +318,76 @@ public final class Scanner {
     }
   }
 
+  /**
+   * Scans the rest of a dependency graph operator after its leading '<' or '>'. The operator may
+   * be followed by '*' or by a depth, and then by a list of edge kinds and a granularity such as
+   * '{call,field,packages}'.
+   */
+  private Token scanGraphOperator(
+      int beginToken, TokenType direct, TokenType transitive, TokenType bounded) {
+    TokenType type = direct;
+    int depth = 0;
+    if (peekChar() == '*') {
+      nextChar();
+      type = transitive;
+    } else if (Character.isDigit(peekChar())) {
+      type = bounded;
+      depth = scanDepth();
+    }
+    if (peekChar() != '{') {
+      return type == bounded
+          ? new GraphOperatorToken(type, beginToken, index, depth, 0, null)
+          : new Token(type, beginToken, index);
+    }
+
+    int beginOptions = index;
+    nextChar();
+    int kinds = 0;
+    Granularity granularity = null;
+    while (true) {
+      int beginOption = index;
+      while (!isAtEnd() && peekChar() != ',' && peekChar() != '}') {
+        nextChar();
+      }
+      String name = source.substring(beginOption, index).trim();
+      EdgeKind kind = EdgeKind.fromSyntax(name);
+      if (kind != null) {
+        kinds |= kind.mask();
+      } else if (name.equals(Granularity.packages.toString())) {
+        granularity = Granularity.packages;
+      } else if (name.equals(Granularity.types.toString())) {
+        granularity = Granularity.types;
+      } else {
+        reportError(beginOption, index, "Unknown edge kind '%s'", name);
+      }
+      if (isAtEnd()) {
+        reportError(beginOptions, index, "Unterminated edge kind list");
+        break;
+      }
+      if (nextChar() == '}') {
+        break;
+      }
+    }
+    return new GraphOperatorToken(type, beginToken, index, depth, kinds, granularity);
+  }
+
+  /**
+   * Scans the digits of a depth bounded operator such as '<3'.
+   */
+  private int scanDepth() {
+    int beginDepth = index;
+    while (Character.isDigit(peekChar())) {
+      nextChar();
+    }
+    try {
+      return Integer.parseInt(source.substring(beginDepth, index));
+    } catch (NumberFormatException e) {
+      reportError(beginDepth, index, "Depth too large");
+      return 0;
+    }
+  }
+
+
   /**
    * Returns the char at the current source position. Advances the source position one char.
    */
@@ -19,10 +19,15 @@ package codecleaver;
 import codecleaver.iterable.FilteredIterable;
 import codecleaver.iterable.Sequence;
 import codecleaver.util.DirectedGraph;
+import codecleaver.util.Dominators;
 import codecleaver.util.Func;
 import codecleaver.util.Pair;
+import codecleaver.util.Partitioner;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 
@@ -30,11 +35,18 @@ import static codecleaver.PredefinedSet.*;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 /**
@@ -43,17 +55,33 @@ import java.util.Set;
  */
 public final class State {
 
+  public static final int DEFAULT_ESTIMATE_PRECISION = 10;
+
   public final IdTable ids = new IdTable();
   private InfoTable infos = new InfoTable(ids);
   private DirectedGraph<Id> inheritanceGraph = new DirectedGraph<Id>();
   private DirectedGraph<Id> dependencyGraph = new DirectedGraph<Id>();
+  private final EnumMap<Granularity, RollupGraph> rollupGraphs =
+      new EnumMap<Granularity, RollupGraph>(Granularity.class);
   private final ArrayList<String> definitionFileList = new ArrayList<String>();
   private final HashSet<String> definitionFileSet = new HashSet<String>();
   private final HashSet<String> symbolFiles = new HashSet<String>();
 
-  private final HashMap<String, Supplier<HashSet<Id>>> sets =
-      new HashMap<String, Supplier<HashSet<Id>>>();
+  private final HashMap<String, Supplier<IdSet>> sets = new HashMap<String, Supplier<IdSet>>();
   private final HashSet<String> predefinedSetNames = new HashSet<String>();
+  // every change to a named set gives it a new version
+  private final HashMap<String, Integer> setVersions = new HashMap<String, Integer>();
+  private int lastSetVersion;
+
+  private static final int DEFAULT_CLOSURE_CACHE_MEGABYTES = 64;
+  private final ClosureCache closures =
+      new ClosureCache(DEFAULT_CLOSURE_CACHE_MEGABYTES * 1024L * 1024L);
+
+  // the dominator tree from the entry points, and the version of the entry points it was built from
+  private Dominators<Id> dominators;
+  private int dominatorsVersion;
+
+  private DispatchMode dispatchMode = DispatchMode.none;
 
   private boolean predefinedSetsStale;
 
@@ -77,6 +105,7 @@ public final class State {
     setInfos(null);
     this.inheritanceGraph = null;
     this.dependencyGraph = null;
+    rollupGraphs.clear();
   }
 
   public Iterable<Pair<TypeId, String>> ensureInfos() throws StateException {
@@ -95,16 +124,28 @@ public final class State {
     Pair<InfoTable, Iterable<Pair<TypeId, String>>> results = buildInfos();
     InfoTable infos = results.first;
     DirectedGraph<Id> inheritanceGraph = buildInheritanceGraph(infos);
-    DirectedGraph<Id> dependencyGraph = buildDependencyGraph(infos, inheritanceGraph);
+    DispatchBuilder dispatch = dispatchMode == DispatchMode.none
+        ? null : new DispatchBuilder(infos, inheritanceGraph);
+    DirectedGraph<Id> dependencyGraph = buildDependencyGraph(infos, inheritanceGraph, dispatch);
+    if (dispatch != null) {
+      dispatch.addEdges(dependencyGraph, dispatchMode, getEntryPoints(infos));
+    }
+    inheritanceGraph.computeComponents();
+    dependencyGraph.computeComponents();
     setInfos(infos);
     this.inheritanceGraph = inheritanceGraph;
     this.dependencyGraph = dependencyGraph;
+    for (Granularity granularity : Granularity.values()) {
+      rollupGraphs.put(granularity, new RollupGraph(dependencyGraph, granularity));
+    }
     
     return results.second;
   }
 
-  private DirectedGraph<Id> buildDependencyGraph(InfoTable infos, DirectedGraph<Id> inheritanceGraph) throws StateException {
-    DependencyGraphBuilder graphBuilder = new DependencyGraphBuilder(infos, inheritanceGraph);
+  private DirectedGraph<Id> buildDependencyGraph(InfoTable infos,
+      DirectedGraph<Id> inheritanceGraph, DispatchBuilder dispatch) throws StateException {
+    DependencyGraphBuilder graphBuilder =
+        new DependencyGraphBuilder(infos, inheritanceGraph, dispatch);
     visitClassFiles(graphBuilder);
     return graphBuilder.getResult();
   }
@@ -137,21 +178,8 @@ public final class State {
     }
 
     // add override methods
-    for (Info info : getInfosOfType(infos, IdType.Method)) {
-      MethodInfo method = (MethodInfo) info;
-      if (!method.isStatic() && !method.isInitializer()) {
-        Id containingType = method.id.getParent();
-        for (Id inheritedType : graph.reachableFrom(containingType)) {
-          if (inheritedType != containingType) {
-            MethodInfo overriddenMethod =
-                infos.lookupMethod((TypeId) inheritedType, method.getName(), method.desc);
-            if (overriddenMethod != null) {
-              graph.addEdge(method.id, overriddenMethod.id);
-            }
-          }
-        }
-      }
-    }
+    new OverrideBuilder(infos, graph).addEdges(
+        getInfosOfType(infos, IdType.Type), getInfosOfType(infos, IdType.Method));
 
     return graph;
   }
@@ -206,20 +234,181 @@ public final class State {
   }
 
 
-  public Iterable<Id> getFrom(Iterable<Id> values) {
-    return getFrom(values, dependencyGraph);
+  // The dependency graph queries take a bit mask of the EdgeKinds to follow, where 0 follows
+  // every dependency, and the granularity to query at, where null queries individual symbols.
+  // Queries at a granularity run over its rollup graph and return packages or types.
+  public Iterable<Id> getFrom(Iterable<Id> values, int kinds, Granularity granularity) {
+    DirectedGraph<Id> graph = getDependencyGraph(granularity);
+    Iterable<Id> roots = rollup(values, granularity);
+    if (kinds == 0) {
+      return getFrom(roots, graph);
+    }
+    return withoutRoots(graph.reachableFrom(roots, 1, kinds), roots);
+  }
+
+  public Iterable<Id> getTo(Iterable<Id> values, int kinds, Granularity granularity) {
+    DirectedGraph<Id> graph = getDependencyGraph(granularity);
+    Iterable<Id> sinks = rollup(values, granularity);
+    if (kinds == 0) {
+      return getTo(sinks, graph);
+    }
+    return withoutRoots(graph.canReach(sinks, 1, kinds), sinks);
+  }
+
+  public Iterable<Id> getTransitiveFrom(Iterable<Id> values, int kinds, Granularity granularity) {
+    DirectedGraph<Id> graph = getDependencyGraph(granularity);
+    Iterable<Id> roots = rollup(values, granularity);
+    if (kinds == 0) {
+      return getTransitiveFrom(roots, graph);
+    }
+    return withRoots(graph.reachableFrom(roots, Integer.MAX_VALUE, kinds), roots);
+  }
+
+  public Iterable<Id> getTransitiveTo(Iterable<Id> values, int kinds, Granularity granularity) {
+    DirectedGraph<Id> graph = getDependencyGraph(granularity);
+    Iterable<Id> sinks = rollup(values, granularity);
+    if (kinds == 0) {
+      return getTransitiveTo(sinks, graph);
+    }
+    return withRoots(graph.canReach(sinks, Integer.MAX_VALUE, kinds), sinks);
   }
 
-  public Iterable<Id> getTo(Iterable<Id> values) {
-    return getTo(values, dependencyGraph);
+  /**
+   * Returns values and every symbol they depend on through at most depth edges.
+   */
+  public Iterable<Id> getBoundedFrom(
+      Iterable<Id> values, int depth, int kinds, Granularity granularity) {
+    Iterable<Id> roots = rollup(values, granularity);
+    return withRoots(getDependencyGraph(granularity).reachableFrom(roots, depth, kinds), roots);
   }
 
-  public Iterable<Id> getTransitiveFrom(Iterable<Id> values) {
-    return getTransitiveFrom(values, dependencyGraph);
+  /**
+   * Returns values and every symbol which depends on them through at most depth edges.
+   */
+  public Iterable<Id> getBoundedTo(
+      Iterable<Id> values, int depth, int kinds, Granularity granularity) {
+    Iterable<Id> sinks = rollup(values, granularity);
+    return withRoots(getDependencyGraph(granularity).canReach(sinks, depth, kinds), sinks);
   }
 
-  public Iterable<Id> getTransitiveTo(Iterable<Id> values) {
-    return getTransitiveTo(values, dependencyGraph);
+  /**
+   * Returns the dependency graph at granularity, or between symbols if granularity is null.
+   */
+  public DirectedGraph<Id> getDependencyGraph(Granularity granularity) {
+    return granularity == null ? dependencyGraph : rollupGraphs.get(granularity).graph;
+  }
+
+  /**
+   * Returns the dependencies between the open files, in the order of getFiles(). result[a][b] is
+   * the number of dependencies from symbols defined in file a to symbols defined in file b. If
+   * transitive, it is instead the number of symbols defined in b which symbols defined in a
+   * depend on transitively.
+   */
+  public long[][] getFileMatrix(boolean transitive) {
+    final HashMap<String, Integer> fileIndices = new HashMap<String, Integer>();
+    for (String file : definitionFileList) {
+      fileIndices.put(file, fileIndices.size());
+    }
+    Func<Id, Integer> fileOf = new Func<Id, Integer>() {
+
+      @Override public Integer apply(Id id) {
+        Info info = infos.getOptionalInfo(id);
+        if (info instanceof TypeInfo || info instanceof MemberInfo) {
+          return fileIndices.get(info.getFileName());
+        }
+        return null;
+      }
+    };
+    if (!transitive) {
+      return dependencyGraph.countEdgesBetweenGroups(fileOf, fileIndices.size());
+    }
+    long[][] result = dependencyGraph.countReachableBetweenGroups(fileOf, fileIndices.size());
+    // symbols without dependencies are not in the graph, but each file still reaches its own
+    for (Info info : infos.getAll()) {
+      if (!dependencyGraph.containsVertex(info.id)) {
+        Integer file = fileOf.apply(info.id);
+        if (file != null) {
+          result[file][file]++;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Splits the loaded types containing values into parts of roughly equal numbers of types,
+   * keeping the number of dependencies between types in different parts small. Types in
+   * pinned.get(i) are always put in part i. Returns the types of each part and the number of
+   * symbol level dependencies between parts.
+   */
+  public Pair<List<IdSet>, Long> getPartition(
+      Iterable<Id> values, int parts, List<? extends Iterable<Id>> pinned) {
+    RollupGraph types = rollupGraphs.get(Granularity.types);
+    HashMap<Id, Integer> indices = new HashMap<Id, Integer>();
+    List<Id> vertices = new ArrayList<Id>();
+    for (Id type : types.rollup(values)) {
+      if (infos.hasInfo(type)) {
+        indices.put(type, vertices.size());
+        vertices.add(type);
+      }
+    }
+    Partitioner partitioner = new Partitioner(vertices.size());
+    for (int part = 0; part < pinned.size(); part++) {
+      for (Id type : types.rollup(pinned.get(part))) {
+        Integer index = indices.get(type);
+        if (index != null) {
+          partitioner.pin(index, part);
+        }
+      }
+    }
+    for (int index = 0; index < vertices.size(); index++) {
+      Id source = vertices.get(index);
+      for (Id destination : types.graph.outEdgesOfVertex(source)) {
+        Integer destinationIndex = indices.get(destination);
+        if (destinationIndex != null) {
+          partitioner.addEdge(index, destinationIndex, types.getMultiplicity(source, destination));
+        }
+      }
+    }
+
+    int[] partition = partitioner.partition(parts);
+    List<IdSet> result = new ArrayList<IdSet>();
+    for (int part = 0; part < parts; part++) {
+      result.add(newSet());
+    }
+    for (int index = 0; index < vertices.size(); index++) {
+      result.get(partition[index]).add(vertices.get(index));
+    }
+    return new Pair<List<IdSet>, Long>(result, partitioner.cutWeight(partition));
+  }
+
+  /**
+   * Writes the dependency graph induced by values at granularity to fileName in format. If
+   * reduced, writes the transitive reduction of the induced graph instead.
+   */
+  public void exportGraph(String fileName, ExportFormat format, Iterable<Id> values,
+      Granularity granularity, boolean reduced) throws IOException {
+    RollupGraph rollupGraph = granularity == null ? null : rollupGraphs.get(granularity);
+    DirectedGraph<Id> graph = getDependencyGraph(granularity);
+    IdSet vertices = newSet(rollup(values, granularity));
+    if (reduced) {
+      graph = graph.subgraph(vertices).transitiveReduction();
+    }
+    new GraphExporter(graph, rollupGraph).export(fileName, format, vertices);
+  }
+
+  /**
+   * Returns the package or type level dependency graph.
+   */
+  public RollupGraph getRollupGraph(Granularity granularity) {
+    return rollupGraphs.get(granularity);
+  }
+
+  /**
+   * Returns the packages or types containing values, or values if granularity is null.
+   */
+  private Iterable<Id> rollup(Iterable<Id> values, Granularity granularity) {
+    return granularity == null ? values : rollupGraphs.get(granularity).rollup(values);
   }
 
   public Iterable<Id> getOverrides(Iterable<Id> values) {
@@ -238,38 +427,57 @@ public final class State {
     return getTransitiveTo(values, inheritanceGraph);
   }
 
-  private static Iterable<Id> getFrom(Iterable<Id> values, DirectedGraph<Id> graph) {
-    HashSet<Id> result = new HashSet<Id>();
+  private Iterable<Id> getFrom(Iterable<Id> values, DirectedGraph<Id> graph) {
+    IdSet result = newSet();
     for (Id value : values) {
       Sequence.addAll(result, graph.outEdgesOfVertex(value));
     }
-    Sequence.removeAll(result, values);
+    result.removeAll(IdSet.of(ids, values));
     return result;
   }
 
-  private static Iterable<Id> getTo(Iterable<Id> values, DirectedGraph<Id> graph) {
-    HashSet<Id> result = new HashSet<Id>();
+  private Iterable<Id> getTo(Iterable<Id> values, DirectedGraph<Id> graph) {
+    IdSet result = newSet();
     for (Id value : values) {
       Sequence.addAll(result, graph.inEdgesOfVertex(value));
     }
-    Sequence.removeAll(result, values);
+    result.removeAll(IdSet.of(ids, values));
     return result;
   }
 
   private static Iterable<Id> getTransitiveFrom(Iterable<Id> values, DirectedGraph<Id> graph) {
-    HashSet<Id> result = new HashSet<Id>(graph.reachableFrom(values));
-    Sequence.addAll(result, values);
-    return result;
+    return withRoots(graph.reachableFrom(values), values);
   }
 
   private static Iterable<Id> getTransitiveTo(Iterable<Id> values, DirectedGraph<Id> graph) {
-    HashSet<Id> result = new HashSet<Id>(graph.canReach(values));
-    Sequence.addAll(result, values);
+    return withRoots(graph.canReach(values), values);
+  }
+
+  /**
+   * Returns reachable plus the roots which have no edges in the graph. The bitset backed
+   * reachable set is returned as is when every root is a vertex, which is the common case.
+   */
+  private static Set<Id> withRoots(Set<Id> reachable, Iterable<Id> roots) {
+    HashSet<Id> isolatedRoots = null;
+    for (Id root : roots) {
+      if (!reachable.contains(root)) {
+        if (isolatedRoots == null) {
+          isolatedRoots = new HashSet<Id>();
+        }
+        isolatedRoots.add(root);
+      }
+    }
+    return isolatedRoots == null ? reachable : Sets.union(reachable, isolatedRoots);
+  }
+
+  private Iterable<Id> withoutRoots(Set<Id> reachable, Iterable<Id> roots) {
+    IdSet result = newSet(reachable);
+    result.removeAll(IdSet.of(ids, roots));
     return result;
   }
 
   public Iterable<Id> getTransitiveExpand(Iterable<Id> values) {
-    HashSet<Id> result = new HashSet<Id>();
+    IdSet result = newSet();
     for (Id value : values) {
       Sequence.addAll(result, transitiveExpand(value));
     }
@@ -277,7 +485,7 @@ public final class State {
   }
 
   public Iterable<Id> getExpand(Iterable<Id> values) {
-    HashSet<Id> result = new HashSet<Id>();
+    IdSet result = newSet();
     for (Id value : values) {
       Sequence.addAll(result, expand(value));
     }
@@ -308,22 +516,110 @@ public final class State {
     return dependencyGraph.distancesTo(sinks, roots);
   }
 
-  public Iterable<Id> getUnion(Iterable<Id> left, Iterable<Id> right) {
-    HashSet<Id> result = Sequence.createSet(left);
-    Sequence.addAll(result, right);
+  /**
+   * Returns the distances from roots at granularity, or between symbols if granularity is null.
+   */
+  public ArrayList<ArrayList<Id>> getDistancesFrom(
+      Iterable<Id> roots, Iterable<Id> sinks, Granularity granularity) {
+    return getDependencyGraph(granularity).distancesFrom(
+        rollup(roots, granularity), rollup(sinks, granularity));
+  }
+
+  /**
+   * Returns the distances to sinks at granularity, or between symbols if granularity is null.
+   */
+  public ArrayList<ArrayList<Id>> getDistancesTo(
+      Iterable<Id> sinks, Iterable<Id> roots, Granularity granularity) {
+    return getDependencyGraph(granularity).distancesTo(
+        rollup(sinks, granularity), rollup(roots, granularity));
+  }
+
+  /**
+   * Returns true if any symbol in from transitively depends on a symbol in to, or if a symbol is
+   * in both. Equivalent to testing whether (<* from) ^ to is not empty.
+   */
+  public boolean getReaches(Iterable<Id> from, Iterable<Id> to) {
+    IdSet sinks = IdSet.of(ids, to);
+    for (Id value : from) {
+      if (sinks.contains(value)) {
+        return true;
+      }
+    }
+    return dependencyGraph.reaches(from, sinks);
+  }
+
+  /**
+   * Returns a shortest chain of dependencies from a symbol in from to a symbol in to, or null if
+   * no symbol in from depends on a symbol in to.
+   */
+  public List<Id> getShortestPath(Iterable<Id> from, Iterable<Id> to) {
+    IdSet sinks = IdSet.of(ids, to);
+    for (Id value : from) {
+      if (sinks.contains(value)) {
+        return ImmutableList.of(value);
+      }
+    }
+    return dependencyGraph.shortestPath(from, sinks);
+  }
+
+  /**
+   * Returns the dependency cycles between symbols at the given granularity, largest first. If
+   * values is not null, returns only the cycles containing a package or type containing values.
+   */
+  public List<Set<Id>> getCycles(Granularity granularity, Iterable<Id> values) {
+    List<Set<Id>> result = getDependencyGraph(granularity).getCycles();
+    if (values != null) {
+      IdSet members = newSet(rollup(values, granularity));
+      for (Iterator<Set<Id>> cycles = result.iterator(); cycles.hasNext();) {
+        if (Collections.disjoint(cycles.next(), members)) {
+          cycles.remove();
+        }
+      }
+    }
+    Collections.sort(result, new Comparator<Set<Id>>() {
+
+      @Override public int compare(Set<Id> left, Set<Id> right) {
+        return right.size() - left.size();
+      }
+    });
     return result;
   }
 
+  /**
+   * Returns the union of left and right. The result is evaluated as it is iterated, see LazySet.
+   */
+  public Iterable<Id> getUnion(Iterable<Id> left, Iterable<Id> right) {
+    return LazySet.union(asSet(left), asSet(right));
+  }
+
+  /**
+   * Returns the intersection of left and right, evaluated as it is iterated.
+   */
   public Iterable<Id> getIntersect(Iterable<Id> left, Iterable<Id> right) {
-    HashSet<Id> result = Sequence.createSet(left);
-    result.retainAll(Sequence.createCollection(right));
-    return result;
+    return LazySet.intersection(asSet(left), asSet(right));
   }
 
+  /**
+   * Returns the members of left which are not in right, evaluated as it is iterated.
+   */
   public Iterable<Id> getMinus(Iterable<Id> left, Iterable<Id> right) {
-    HashSet<Id> result = Sequence.createSet(left);
-    Sequence.removeAll(result, right);
-    return result;
+    return LazySet.difference(asSet(left), asSet(right));
+  }
+
+  /**
+   * Returns values if it is a set, otherwise a new set containing values.
+   */
+  @SuppressWarnings("unchecked")
+  private Set<Id> asSet(Iterable<Id> values) {
+    return values instanceof Set ? (Set<Id>) values : newSet(values);
+  }
+
+  /**
+   * Returns values with any unevaluated set operations evaluated. Operations which pass over
+   * their input more than once use this to evaluate it only once.
+   */
+  public Iterable<Id> evaluate(Iterable<Id> values) {
+    return values instanceof LazySet ? newSet(values) : values;
   }
 
   public void buildPredefinedSets() {
@@ -522,13 +818,28 @@ public final class State {
   }
 
   private void createExternalsPredefinedSet() {
-    createPredefinedSetFromInfos(EXTERNALS, new FilteredIterable<Info>(getInfos().getAll(),
+    createPredefinedSetFromInfos(EXTERNALS, getExternalInfos(getInfos()));
+  }
+
+  private Iterable<Info> getExternalInfos(InfoTable infos) {
+    return new FilteredIterable<Info>(infos.getAll(),
         new Func<Info, Boolean>() {
 
           @Override public Boolean apply(Info info) {
             return hasExternalVisibility(info);
           }
-        }));
+        });
+  }
+
+  /**
+   * Returns the entry points while infos is being built: the user defined set EntryPoints if it
+   * exists, otherwise the symbols in infos which are visible externally.
+   */
+  private Iterable<Id> getEntryPoints(InfoTable infos) {
+    if (hasSet(ENTRY_POINTS.toString())) {
+      return getSet(ENTRY_POINTS.toString());
+    }
+    return Info.idsOfInfos(getExternalInfos(infos));
   }
 
   public boolean isPredefinedSet(String name) {
@@ -562,10 +873,169 @@ public final class State {
     return sets.containsKey(name);
   }
 
-  public HashSet<Id> getSet(String name) {
+  /**
+   * Returns the symbols which would no longer be reachable from the entry points if values were
+   * removed, including values.
+   */
+  public Iterable<Id> getExclusive(Iterable<Id> values) {
+    IdSet roots = newSet(values);
+    Set<Id> entryPoints = getSet(getEntryPointsName());
+    return withRoots(dependencyGraph.reachableOnlyThrough(entryPoints, roots), roots);
+  }
+
+  /**
+   * Returns the symbols in values which are reachable from the entry points, paired with the number
+   * of symbols which would no longer be reachable if the symbol and its members were removed, the
+   * size of getExclusive of the symbol. Sorted by count, largest first. Counts of symbols without
+   * members come from the dominator tree; each package or type costs a pass over the graph.
+   */
+  public List<Pair<Id, Integer>> getRetainedCounts(Iterable<Id> values) {
+    String entryPoints = getEntryPointsName();
+    if (dominators == null || dominatorsVersion != getSetVersion(entryPoints)) {
+      dominators = dependencyGraph.dominators(getSet(entryPoints));
+      dominatorsVersion = getSetVersion(entryPoints);
+    }
+    List<Pair<Id, Integer>> result = new ArrayList<Pair<Id, Integer>>();
+    for (Id value : newSet(values)) {
+      if (!value.getChildren().iterator().hasNext()) {
+        if (dominators.isReachable(value)) {
+          result.add(new Pair<Id, Integer>(value, dominators.dominatedCount(value)));
+        }
+      } else if (isAnyReachable(value.idAndDescendants())) {
+        result.add(new Pair<Id, Integer>(
+            value, Iterables.size(getExclusive(value.idAndDescendants()))));
+      }
+    }
+    Collections.sort(result, new Comparator<Pair<Id, Integer>>() {
+
+      @Override public int compare(Pair<Id, Integer> left, Pair<Id, Integer> right) {
+        int result = right.second - left.second;
+        return result != 0 ? result : left.first.toString().compareTo(right.first.toString());
+      }
+    });
+    return result;
+  }
+
+  private boolean isAnyReachable(Iterable<Id> values) {
+    for (Id value : values) {
+      if (dominators.isReachable(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns an estimate of the number of symbols each symbol in values depends on transitively,
+   * including itself. Estimates for the whole set are computed in one pass over the dependency
+   * graph, with HyperLogLog sketches of 2^precision registers.
+   */
+  public Map<Id, Long> getEstimatedTransitiveFromCounts(Iterable<Id> values, int precision) {
+    return withSingletonCounts(
+        dependencyGraph.estimateReachableFromCounts(values, precision), values);
+  }
+
+  /**
+   * Returns an estimate of the number of symbols which depend transitively on each symbol in
+   * values, including itself.
+   */
+  public Map<Id, Long> getEstimatedTransitiveToCounts(Iterable<Id> values, int precision) {
+    return withSingletonCounts(dependencyGraph.estimateCanReachCounts(values, precision), values);
+  }
+
+  /**
+   * Returns the count symbols in values with the largest degree, largest first, with their
+   * degrees. Ties are broken by name. At a granularity values are replaced by their packages or
+   * types, and direct degrees count the symbol level dependencies each edge summarizes.
+   * Transitive degrees are estimated, as in getEstimatedTransitiveFromCounts.
+   */
+  public List<Pair<Id, Long>> getTopDegrees(
+      Iterable<Id> values, int count, Degree degree, Granularity granularity) {
+    DirectedGraph<Id> graph = getDependencyGraph(granularity);
+    Set<Id> set = newSet(rollup(values, granularity));
+    Map<Id, Long> estimates = null;
+    if (degree.isTransitive) {
+      estimates = withSingletonCounts(degree.isIncoming
+          ? graph.estimateCanReachCounts(set, DEFAULT_ESTIMATE_PRECISION)
+          : graph.estimateReachableFromCounts(set, DEFAULT_ESTIMATE_PRECISION), set);
+    }
+
+    // A bounded heap whose head is the smallest of the largest count degrees seen so far.
+    Comparator<Pair<Id, Long>> largestFirst = new Comparator<Pair<Id, Long>>() {
+
+      @Override public int compare(Pair<Id, Long> left, Pair<Id, Long> right) {
+        int result = right.second.compareTo(left.second);
+        return result != 0 ? result : left.first.toString().compareTo(right.first.toString());
+      }
+    };
+    PriorityQueue<Pair<Id, Long>> top = new PriorityQueue<Pair<Id, Long>>(
+        Math.max(1, Math.min(count, set.size())), Collections.reverseOrder(largestFirst));
+    for (Id value : set) {
+      long valueDegree;
+      if (estimates != null) {
+        valueDegree = estimates.get(value);
+      } else if (granularity != null) {
+        valueDegree = rollupGraphs.get(granularity).getWeightedDegree(value, degree.isIncoming);
+      } else if (degree.isIncoming) {
+        valueDegree = graph.inEdgesOfVertex(value).size();
+      } else {
+        valueDegree = graph.outEdgesOfVertex(value).size();
+      }
+      Pair<Id, Long> entry = new Pair<Id, Long>(value, valueDegree);
+      if (top.size() < count) {
+        top.add(entry);
+      } else if (count > 0 && largestFirst.compare(entry, top.peek()) < 0) {
+        top.poll();
+        top.add(entry);
+      }
+    }
+    List<Pair<Id, Long>> result = new ArrayList<Pair<Id, Long>>(top);
+    Collections.sort(result, largestFirst);
+    return result;
+  }
+
+  /**
+   * Adds a count of 1 to counts for each value without dependencies.
+   */
+  private static Map<Id, Long> withSingletonCounts(Map<Id, Long> counts, Iterable<Id> values) {
+    for (Id value : values) {
+      if (!counts.containsKey(value)) {
+        counts.put(value, 1L);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the name of the set of entry points. The user defined set EntryPoints if it exists,
+   * otherwise Externals.
+   */
+  private String getEntryPointsName() {
+    return hasSet(ENTRY_POINTS.toString()) ? ENTRY_POINTS.toString() : EXTERNALS.toString();
+  }
+
+  /**
+   * Returns the named set. Sets are values: the result must not be changed, and later changes to
+   * the named set replace it rather than changing it.
+   */
+  public IdSet getSet(String name) {
     return sets.get(name).get();
   }
 
+  /**
+   * Returns a new empty set of this state's ids.
+   */
+  public IdSet newSet() {
+    return new IdSet(ids);
+  }
+
+  /**
+   * Returns a new set of this state's ids containing values.
+   */
+  public IdSet newSet(Iterable<? extends Id> values) {
+    return IdSet.copyOf(ids, values);
+  }
+
   public Set<Id> getUnextensiblePackages() {
     if (hasSet(UNEXTENSIBLE_PACKAGES.toString())) {
       return getSet(UNEXTENSIBLE_PACKAGES.toString());
@@ -615,13 +1085,15 @@ public final class State {
         }));
   }
 
-  public HashSet<Id> createSet(String name) {
-    HashSet<Id> result = new HashSet<Id>();
-    return assignSet(name, result);
+  public IdSet createSet(String name) {
+    return assignSet(name, newSet());
   }
 
-  public HashSet<Id> assignSet(String name, final HashSet<Id> values) {
-    sets.put(name, Suppliers.ofInstance(values));
+  /**
+   * Makes values the named set. values must not be changed afterwards.
+   */
+  public IdSet assignSet(String name, final IdSet values) {
+    putSet(name, Suppliers.ofInstance(values));
     if (name.equals(UNEXTENSIBLE_PACKAGES)) {
       createExternalsPredefinedSet();
     }
@@ -630,6 +1102,7 @@ public final class State {
 
   public void deleteSet(String name) {
     sets.remove(name);
+    setVersions.put(name, ++lastSetVersion);
     if (name.equals(UNEXTENSIBLE_PACKAGES)) {
       createExternalsPredefinedSet();
     }
@@ -654,22 +1127,105 @@ public final class State {
   
   private void createPredefinedSet(String name, final Iterable<Id> values) {
     predefinedSetNames.add(name);
-    sets.put(name, Suppliers.memoize(
-        new Supplier<HashSet<Id>>() {
+    putSet(name, Suppliers.memoize(
+        new Supplier<IdSet>() {
 
-          @Override public HashSet<Id> get() {
-            HashSet<Id> result = new HashSet<Id>();
-            Sequence.addAll(result, values);
-            return result;
+          @Override public IdSet get() {
+            return newSet(values);
           }
         }));
   }
 
+  private void putSet(String name, Supplier<IdSet> values) {
+    sets.put(name, values);
+    setVersions.put(name, ++lastSetVersion);
+  }
+
+  /**
+   * Replaces the named set with one which also contains values. The new set shares the chunks
+   * of the old one which values does not change.
+   */
+  public void addToSet(String name, Iterable<Id> values) {
+    IdSet result = getSet(name).copy();
+    result.addAll(IdSet.of(ids, values));
+    putSet(name, Suppliers.ofInstance(result));
+  }
+
+  /**
+   * Replaces the named set with one which does not contain values.
+   */
+  public void removeFromSet(String name, Iterable<Id> values) {
+    IdSet result = getSet(name).copy();
+    result.removeAll(IdSet.of(ids, values));
+    putSet(name, Suppliers.ofInstance(result));
+  }
+
+  /**
+   * Returns a number which changes whenever the named set is created, changed or deleted. Returns
+   * 0 for names which have never been used for a set.
+   */
+  private int getSetVersion(String name) {
+    Integer version = setVersions.get(name);
+    return version == null ? 0 : version;
+  }
+
+  /**
+   * Returns the cached result of applying a transitive operator to the set or symbol named
+   * source, or null if it is not cached.
+   */
+  public Iterable<Id> getCachedClosure(UnaryOperator operator, String source) {
+    return closures.get(operator, source, getSetVersion(source));
+  }
+
+  /**
+   * Caches the result of applying a transitive operator to the set or symbol named source. The
+   * entry is dropped when the set changes or the graphs are rebuilt.
+   */
+  public void cacheClosure(UnaryOperator operator, String source, Iterable<Id> closure) {
+    DirectedGraph<Id> graph = operator == UnaryOperator.TransitiveFrom
+        || operator == UnaryOperator.TransitiveTo ? dependencyGraph : inheritanceGraph;
+    // a closure is a bitset over the vertices of its graph
+    long weight = graph.vertexCount() / 8 + 64;
+    closures.put(operator, source, getSetVersion(source), closure, weight);
+  }
+
+  /**
+   * Sets how virtual calls are added to the dependency graph. The graphs are rebuilt on next use,
+   * even if the mode is unchanged, so that rapid type analysis sees the current EntryPoints.
+   */
+  public void setDispatchMode(DispatchMode mode) {
+    dispatchMode = mode;
+    clearInfos();
+  }
+
+  /**
+   * Sets the size limit of the closure cache. A limit of 0 disables the cache.
+   */
+  public void setClosureCacheLimit(int megabytes) {
+    closures.setLimit(megabytes * 1024L * 1024L);
+  }
+
   public Iterable<String> getSetNames() {
     return sets.keySet();
   }
 
-  public void addSymbolsFile(String fileName, HashSet<Id> values) {
+  /**
+   * Returns a new state with only fileName open, loaded with the same dispatch mode as this one.
+   * Its ids are separate from this state's, so another version of a file which is open here can
+   * be loaded without conflicting definitions.
+   */
+  public State openVersion(String fileName) throws StateException {
+    State result = new State();
+    result.dispatchMode = dispatchMode;
+    SymbolReader reader = new SymbolReader();
+    IdClassReader.visitJarFile(result.ids, reader, fileName);
+    result.addSymbolsFile(fileName, reader.getResult());
+    result.addDefinitionsOfFile(fileName);
+    result.ensureInfos();
+    return result;
+  }
+
+  public void addSymbolsFile(String fileName, Iterable<Id> values) {
     createPredefinedSet(fileName, values);
     symbolFiles.add(fileName);
     this.predefinedSetsStale = true;
@@ -686,6 +1242,8 @@ public final class State {
 
   private void setInfos(InfoTable infos) {
     this.infos = infos;
+    closures.clear();
+    dominators = null;
     this.predefinedSetsStale = true;
   }
 
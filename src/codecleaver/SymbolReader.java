@@ -44,7 +44,8 @@ public class SymbolReader implements IdClassVisitor {
       String name,
       String signature,
       String superName,
-      String[] interfaces) {
+      String[] interfaces,
+      int size) {
     add(id);
     // add containing package
     add(id.getParent());
@@ -66,7 +67,8 @@ public class SymbolReader implements IdClassVisitor {
       String name,
       String desc,
       String signature,
-      String[] exceptions) {
+      String[] exceptions,
+      int codeLength) {
     add(id);
     return null;
   }
@@ -40,12 +40,15 @@ public enum TokenType {
   To(">", UnaryOperator.To),
   TransitiveFrom("<*", UnaryOperator.TransitiveFrom),
   TransitiveTo(">*", UnaryOperator.TransitiveTo),
+  BoundedFrom("<n", UnaryOperator.BoundedFrom),
+  BoundedTo(">n", UnaryOperator.BoundedTo),
   Overrides("[", UnaryOperator.Overrides),
   Overridden("]", UnaryOperator.Overridden),
   TransitiveOverrides("[*", UnaryOperator.TransitiveOverrides),
   TransitiveOverridden("]*", UnaryOperator.TransitiveOverridden),
   Expand("!", UnaryOperator.Expand),
   TransitiveExpand("!*", UnaryOperator.TransitiveExpand), 
+  Exclusive("~", UnaryOperator.Exclusive),
   Id(null);
 
   public final String value;
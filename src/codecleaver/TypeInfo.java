@@ -23,11 +23,14 @@ public class TypeInfo extends ContainerInfo {
   public final TypeId superId;
   public final TypeId[] interfaces;
   public final String file;
+  // the size of the class file in bytes
+  public final int size;
 
   public TypeInfo(String file,
       TypeId id,
       ContainerInfo parent,
       int access,
+      int size,
       TypeId superId,
       TypeId[] interfaces,
       ImmutableSet<AnnotationInfo> annotations) {
@@ -39,6 +42,7 @@ public class TypeInfo extends ContainerInfo {
     }
     
     this.file = file;
+    this.size = size;
     this.id = id;
     this.superId = superId;
     this.interfaces = interfaces;
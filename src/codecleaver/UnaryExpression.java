@@ -17,8 +17,16 @@ package codecleaver;
 
 public class UnaryExpression extends Expression {
   public UnaryExpression(UnaryOperator operator, Expression expression) {
+    this(operator, 0, 0, null, expression);
+  }
+
+  public UnaryExpression(UnaryOperator operator, int depth, int kinds, Granularity granularity,
+      Expression expression) {
     super(ExpressionType.Unary);
     this.operator = operator;
+    this.depth = depth;
+    this.kinds = kinds;
+    this.granularity = granularity;
     this.expression = expression;
   }
 
@@ -27,5 +35,11 @@ public class UnaryExpression extends Expression {
   }
 
   public final UnaryOperator operator;
+  // the maximum depth of a depth bounded operator
+  public final int depth;
+  // the EdgeKinds followed by a dependency graph operator, or 0 for all kinds
+  public final int kinds;
+  // the granularity of a dependency graph operator, or null for individual symbols
+  public final Granularity granularity;
   public final Expression expression;
 }
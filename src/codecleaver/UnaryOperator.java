@@ -16,7 +16,7 @@
 package codecleaver;
 
 public enum UnaryOperator {
-  From, To, TransitiveFrom, TransitiveTo, 
+  From, To, TransitiveFrom, TransitiveTo, BoundedFrom, BoundedTo,
   Overrides, Overridden, TransitiveOverrides, TransitiveOverridden, 
-  Expand, TransitiveExpand, 
+  Expand, TransitiveExpand, Exclusive,
 }
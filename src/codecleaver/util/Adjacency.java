@@ -0,0 +1,250 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver.util;
+
+import java.util.Arrays;
+
+/**
+ * The edges leaving each vertex of a graph whose vertices are numbered 0 .. size() - 1. Edges are
+ * stored as one growable int array per vertex, so traversals never box or hash.
+ *
+ * <p>Duplicate edges may be added cheaply. They are removed the next time a vertex is compacted,
+ * which happens when its array grows and when compactAll() is called. Traversals tolerate
+ * duplicates; degree() and targets() compact first, so they always see a sorted, unique list.
+ *
+ * <p>A labelled adjacency also keeps a bit mask of edge kinds for every edge, in a parallel array.
+ * When duplicate edges are removed their kinds are merged.
+ */
+public final class Adjacency {
+  private static final int[] NO_EDGES = new int[0];
+  private static final short[] NO_KINDS = new short[0];
+
+  private final boolean isLabelled;
+  private int[][] targets = new int[0][];
+  private short[][] kinds;
+  private int[] counts = new int[0];
+  private boolean[] isDirty = new boolean[0];
+  private int[] dirty = new int[16];
+  private int dirtyCount;
+  private int size;
+
+  public Adjacency() {
+    this(false);
+  }
+
+  public Adjacency(boolean isLabelled) {
+    this.isLabelled = isLabelled;
+    if (isLabelled) {
+      kinds = new short[0][];
+    }
+  }
+
+  /**
+   * The number of vertices.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Adds a new vertex with no edges and returns its number.
+   */
+  public int addVertex() {
+    if (size == targets.length) {
+      int capacity = Math.max(16, size * 2);
+      targets = Arrays.copyOf(targets, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+      isDirty = Arrays.copyOf(isDirty, capacity);
+      if (isLabelled) {
+        kinds = Arrays.copyOf(kinds, capacity);
+      }
+    }
+    targets[size] = NO_EDGES;
+    if (isLabelled) {
+      kinds[size] = NO_KINDS;
+    }
+    return size++;
+  }
+
+  /**
+   * Adds an edge from source to destination. Both vertices must already have been added.
+   */
+  public void add(int source, int destination) {
+    add(source, destination, 0);
+  }
+
+  /**
+   * Adds an edge from source to destination with the given kinds. The kinds are ignored unless
+   * this adjacency is labelled.
+   */
+  public void add(int source, int destination, int kind) {
+    int count = counts[source];
+    int[] edges = targets[source];
+    if (count > 0 && edges[count - 1] == destination) {
+      if (isLabelled) {
+        kinds[source][count - 1] |= kind;
+      }
+      return;
+    }
+    if (count == edges.length) {
+      if (isDirty[source]) {
+        count = compact(source);
+      }
+      if (count * 2 >= edges.length) {
+        int capacity = Math.max(4, edges.length * 2);
+        edges = targets[source] = Arrays.copyOf(edges, capacity);
+        if (isLabelled) {
+          kinds[source] = Arrays.copyOf(kinds[source], capacity);
+        }
+      }
+    }
+    edges[count] = destination;
+    if (isLabelled) {
+      kinds[source][count] = (short) kind;
+    }
+    counts[source] = count + 1;
+    markDirty(source);
+  }
+
+  /**
+   * Returns the raw edge array of a vertex. Only the first rawDegree(vertex) entries are valid and
+   * they may contain duplicates. Suitable for traversals which track visited vertices.
+   */
+  public int[] edges(int vertex) {
+    return targets[vertex];
+  }
+
+  /**
+   * Returns the kinds of the raw edges of a vertex, parallel to edges(vertex). Only valid for a
+   * labelled adjacency.
+   */
+  public short[] kinds(int vertex) {
+    return kinds[vertex];
+  }
+
+  /**
+   * The number of valid entries in edges(vertex).
+   */
+  public int rawDegree(int vertex) {
+    return counts[vertex];
+  }
+
+  /**
+   * The number of distinct edges leaving vertex.
+   */
+  public int degree(int vertex) {
+    compactAll();
+    return counts[vertex];
+  }
+
+  /**
+   * Returns the distinct, sorted destinations of the edges leaving vertex. The returned array may
+   * be longer than degree(vertex) and must not be modified.
+   */
+  public int[] targets(int vertex) {
+    compactAll();
+    return targets[vertex];
+  }
+
+  /**
+   * Is there an edge from source to destination.
+   */
+  public boolean contains(int source, int destination) {
+    compactAll();
+    return Arrays.binarySearch(targets[source], 0, counts[source], destination) >= 0;
+  }
+
+  /**
+   * Sorts and removes duplicates from the edges of every vertex added to since the last call.
+   */
+  public void compactAll() {
+    for (int index = 0; index < dirtyCount; index++) {
+      compact(dirty[index]);
+    }
+    dirtyCount = 0;
+  }
+
+  /**
+   * The total number of distinct edges.
+   */
+  public long edgeCount() {
+    compactAll();
+    long result = 0;
+    for (int vertex = 0; vertex < size; vertex++) {
+      result += counts[vertex];
+    }
+    return result;
+  }
+
+  private void markDirty(int vertex) {
+    if (!isDirty[vertex]) {
+      isDirty[vertex] = true;
+      if (dirtyCount == dirty.length) {
+        dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+      }
+      dirty[dirtyCount++] = vertex;
+    }
+  }
+
+  /**
+   * Sorts and removes duplicates from the edges of vertex. Returns the new edge count.
+   */
+  private int compact(int vertex) {
+    isDirty[vertex] = false;
+    if (isLabelled) {
+      return compactLabelled(vertex);
+    }
+    int[] edges = targets[vertex];
+    int count = counts[vertex];
+    Arrays.sort(edges, 0, count);
+    int unique = 0;
+    for (int index = 0; index < count; index++) {
+      if (unique == 0 || edges[unique - 1] != edges[index]) {
+        edges[unique++] = edges[index];
+      }
+    }
+    counts[vertex] = unique;
+    return unique;
+  }
+
+  /**
+   * Compacts the edges of a vertex together with their kinds. Each edge is packed into a long with
+   * its destination in the high bits, so sorting the longs sorts by destination.
+   */
+  private int compactLabelled(int vertex) {
+    int[] edges = targets[vertex];
+    short[] edgeKinds = kinds[vertex];
+    int count = counts[vertex];
+    long[] packed = new long[count];
+    for (int index = 0; index < count; index++) {
+      packed[index] = ((long) edges[index] << 16) | (edgeKinds[index] & 0xFFFF);
+    }
+    Arrays.sort(packed);
+    int unique = 0;
+    for (int index = 0; index < count; index++) {
+      int destination = (int) (packed[index] >>> 16);
+      short kind = (short) packed[index];
+      if (unique > 0 && edges[unique - 1] == destination) {
+        edgeKinds[unique - 1] |= kind;
+      } else {
+        edges[unique] = destination;
+        edgeKinds[unique++] = kind;
+      }
+    }
+    counts[vertex] = unique;
+    return unique;
+  }
+}
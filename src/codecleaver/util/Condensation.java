@@ -0,0 +1,246 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The strongly connected components of a graph and the acyclic graph between them. Components
+ * are found with an iterative version of Tarjan's algorithm so deep graphs cannot overflow the
+ * stack.
+ *
+ * <p>Components are numbered in the order Tarjan's algorithm completes them, so every edge of the
+ * condensed graph goes from a higher numbered component to a lower numbered one. Iterating
+ * components from highest to lowest visits them in topological order.
+ */
+public final class Condensation {
+  private final int[] componentOf;
+  private final int[] memberStart;
+  private final int[] members;
+  private final BitSet hasSelfEdge;
+  private final Adjacency outEdges = new Adjacency();
+  private final Adjacency inEdges = new Adjacency();
+
+  /**
+   * Computes the strongly connected components of the graph whose edges are in edges.
+   */
+  public Condensation(Adjacency edges) {
+    int vertexCount = edges.size();
+    componentOf = new int[vertexCount];
+    int componentCount = findComponents(edges);
+
+    memberStart = new int[componentCount + 1];
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      memberStart[componentOf[vertex] + 1]++;
+    }
+    for (int component = 0; component < componentCount; component++) {
+      memberStart[component + 1] += memberStart[component];
+    }
+    members = new int[vertexCount];
+    int[] next = Arrays.copyOf(memberStart, componentCount);
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      members[next[componentOf[vertex]]++] = vertex;
+    }
+
+    hasSelfEdge = new BitSet(componentCount);
+    for (int component = 0; component < componentCount; component++) {
+      outEdges.addVertex();
+      inEdges.addVertex();
+    }
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      int source = componentOf[vertex];
+      int[] targets = edges.edges(vertex);
+      for (int index = edges.rawDegree(vertex) - 1; index >= 0; index--) {
+        int destination = componentOf[targets[index]];
+        if (source != destination) {
+          outEdges.add(source, destination);
+          inEdges.add(destination, source);
+        } else if (targets[index] == vertex) {
+          hasSelfEdge.set(source);
+        }
+      }
+    }
+    outEdges.compactAll();
+    inEdges.compactAll();
+  }
+
+  /**
+   * Fills in componentOf and returns the number of components.
+   */
+  private int findComponents(Adjacency edges) {
+    int vertexCount = edges.size();
+    int[] order = new int[vertexCount];
+    int[] lowLink = new int[vertexCount];
+    Arrays.fill(order, -1);
+    BitSet isOnStack = new BitSet(vertexCount);
+    int[] stack = new int[vertexCount];
+    int stackSize = 0;
+    int[] callStack = new int[vertexCount];
+    int[] nextEdge = new int[vertexCount];
+    int callDepth = 0;
+    int visitCount = 0;
+    int componentCount = 0;
+
+    for (int root = 0; root < vertexCount; root++) {
+      if (order[root] != -1) {
+        continue;
+      }
+      order[root] = lowLink[root] = visitCount++;
+      stack[stackSize++] = root;
+      isOnStack.set(root);
+      callStack[callDepth] = root;
+      nextEdge[callDepth++] = 0;
+
+      while (callDepth > 0) {
+        int vertex = callStack[callDepth - 1];
+        int edge = nextEdge[callDepth - 1];
+        if (edge < edges.rawDegree(vertex)) {
+          nextEdge[callDepth - 1]++;
+          int target = edges.edges(vertex)[edge];
+          if (order[target] == -1) {
+            order[target] = lowLink[target] = visitCount++;
+            stack[stackSize++] = target;
+            isOnStack.set(target);
+            callStack[callDepth] = target;
+            nextEdge[callDepth++] = 0;
+          } else if (isOnStack.get(target)) {
+            lowLink[vertex] = Math.min(lowLink[vertex], order[target]);
+          }
+          continue;
+        }
+
+        callDepth--;
+        if (lowLink[vertex] == order[vertex]) {
+          int member;
+          do {
+            member = stack[--stackSize];
+            isOnStack.clear(member);
+            componentOf[member] = componentCount;
+          } while (member != vertex);
+          componentCount++;
+        }
+        if (callDepth > 0) {
+          int parent = callStack[callDepth - 1];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[vertex]);
+        }
+      }
+    }
+    return componentCount;
+  }
+
+  /**
+   * The number of components.
+   */
+  public int componentCount() {
+    return memberStart.length - 1;
+  }
+
+  /**
+   * The component containing vertex.
+   */
+  public int componentOf(int vertex) {
+    return componentOf[vertex];
+  }
+
+  /**
+   * The number of vertices in component.
+   */
+  public int memberCount(int component) {
+    return memberStart[component + 1] - memberStart[component];
+  }
+
+  /**
+   * Returns the index-th vertex of component.
+   */
+  public int member(int component, int index) {
+    return members[memberStart[component] + index];
+  }
+
+  /**
+   * Is component part of a cycle: does it have more than one member, or a member with an edge to
+   * itself.
+   */
+  public boolean isCyclic(int component) {
+    return memberCount(component) > 1 || hasSelfEdge.get(component);
+  }
+
+  /**
+   * The edges between components.
+   */
+  public Adjacency getOutEdges() {
+    return outEdges;
+  }
+
+  /**
+   * The edges between components, reversed.
+   */
+  public Adjacency getInEdges() {
+    return inEdges;
+  }
+
+  /**
+   * Returns the transitive reduction of the edges between components: the edges whose source
+   * cannot reach their destination any other way. Components are visited from the sinks up, each
+   * with a bit set of the components it reaches. The successors of a component are checked
+   * nearest first, so a successor is only essential if no nearer successor reaches it. A
+   * component's bit set is released once every component with an edge to it has been visited.
+   */
+  public Adjacency transitiveReduction() {
+    int count = componentCount();
+    Adjacency result = new Adjacency();
+    BitSet[] reaches = new BitSet[count];
+    int[] pending = new int[count];
+    for (int component = 0; component < count; component++) {
+      result.addVertex();
+      pending[component] = inEdges.degree(component);
+    }
+    for (int component = 0; component < count; component++) {
+      int[] successors = outEdges.targets(component);
+      BitSet reach = new BitSet();
+      // Successors are sorted in increasing order, and a successor can only reach lower numbered
+      // components, so the nearest are last.
+      for (int index = outEdges.degree(component) - 1; index >= 0; index--) {
+        int successor = successors[index];
+        if (!reach.get(successor)) {
+          result.add(component, successor);
+          reach.or(reaches[successor]);
+          reach.set(successor);
+        }
+        if (--pending[successor] == 0) {
+          reaches[successor] = null;
+        }
+      }
+      if (pending[component] > 0) {
+        reaches[component] = reach;
+      }
+    }
+    result.compactAll();
+    return result;
+  }
+
+  /**
+   * Adds every member of the components in components to vertices.
+   */
+  public void addMembers(BitSet components, BitSet vertices) {
+    for (int component = components.nextSetBit(0); component >= 0;
+        component = components.nextSetBit(component + 1)) {
+      for (int index = memberStart[component]; index < memberStart[component + 1]; index++) {
+        vertices.set(members[index]);
+      }
+    }
+  }
+}
@@ -18,13 +18,17 @@ package codecleaver.util;
 import codecleaver.iterable.EmptyIterable;
 import codecleaver.iterable.Sequence;
 
-import com.google.common.collect.ImmutableSet;
-
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -32,22 +36,41 @@ import java.util.Set;
  * graph can compute transitive reachability both to and from a vertex, as well as distance to and
  * from a vertex.
  *
+ * <p>Vertices are numbered densely in the order they are added. Edges are stored as int arrays of
+ * vertex numbers in both directions, and reachability is computed over those numbers with a
+ * bitset of visited vertices. Each edge may be labelled with a bit mask of kinds, and some queries
+ * follow only edges of selected kinds. Once computeComponents has been called, reachability is
+ * computed over the strongly connected components of the graph and expanded to their members at
+ * the end.
+ *
  * @param <T> the type of the vertices in the graph.
  */
 public class DirectedGraph<T> {
+  /**
+   * The smallest search frontier expanded in parallel by default.
+   */
+  public static final int DEFAULT_FRONTIER_THRESHOLD = 4096;
+
   private final Map<T, Vertex<T>> nodes = new HashMap<T, Vertex<T>>();
+  private final ArrayList<Vertex<T>> vertices = new ArrayList<Vertex<T>>();
+  private final Adjacency outEdges = new Adjacency(true);
+  private final Adjacency inEdges = new Adjacency(true);
+  private Condensation condensation;
+  private ReachabilityIndex reachabilityIndex;
+  // the vertices visited by a depth bounded search, cleared again when the search ends
+  private final BitSet boundedVisited = new BitSet();
 
   /**
-   * A vertex in a directed graph. Stores both incoming and outgoing edges. Mutable.
+   * A vertex in a directed graph. Its edges are stored by number in the graph's Adjacency tables.
    */
   private static class Vertex<T> {
-    public Vertex(T vertex) {
+    public Vertex(T vertex, int index) {
       this.vertex = vertex;
+      this.index = index;
     }
 
     public final T vertex;
-    public final HashSet<T> outEdges = new HashSet<T>();
-    public final HashSet<T> inEdges = new HashSet<T>();
+    public final int index;
   }
 
   public DirectedGraph() {}
@@ -56,17 +79,27 @@ public class DirectedGraph<T> {
    * Adds an edge to the graph. Both the source and destination may not be null.
    */
   public void addEdge(T source, T destination) {
+    addEdge(source, destination, 0);
+  }
+
+  /**
+   * Adds an edge labelled with a bit mask of kinds to the graph. Adding the same edge again with
+   * other kinds adds those kinds to the edge.
+   */
+  public void addEdge(T source, T destination, int kinds) {
     Vertex<T> fromNode = nodeOfVertex(source);
     Vertex<T> toNode = nodeOfVertex(destination);
-    addEdge(fromNode, toNode);
+    addEdge(fromNode, toNode, kinds);
   }
 
   /**
    * Adds an edge to the graph from source to destination.
    */
-  private void addEdge(Vertex<T> source, Vertex<T> destination) {
-    source.outEdges.add(destination.vertex);
-    destination.inEdges.add(source.vertex);
+  private void addEdge(Vertex<T> source, Vertex<T> destination, int kinds) {
+    outEdges.add(source.index, destination.index, kinds);
+    inEdges.add(destination.index, source.index, kinds);
+    condensation = null;
+    reachabilityIndex = null;
   }
 
   /**
@@ -74,11 +107,18 @@ public class DirectedGraph<T> {
    * nothing.
    */
   public void addOptionalEdge(T source, T destination) {
+    addOptionalEdge(source, destination, 0);
+  }
+
+  /**
+   * Adds an edge labelled with kinds, but only if both the source and destination are not null.
+   */
+  public void addOptionalEdge(T source, T destination, int kinds) {
     if (source == null || destination == null) {
       return;
     }
 
-    addEdge(source, destination);
+    addEdge(source, destination, kinds);
   }
 
   /**
@@ -88,14 +128,242 @@ public class DirectedGraph<T> {
     return existingNodeOfVertex(vertex) != null;
   }
 
+  /**
+   * Sets the number of threads used to expand a search frontier of at least frontierThreshold
+   * vertices, for every graph. One thread searches sequentially. By default every processor is
+   * used on frontiers of DEFAULT_FRONTIER_THRESHOLD vertices.
+   */
+  public static void setParallelism(int threads, int frontierThreshold) {
+    ParallelBreadthFirstSearch.setParallelism(threads, frontierThreshold);
+  }
+
+  /**
+   * The number of vertices with edges.
+   */
+  public int vertexCount() {
+    return vertices.size();
+  }
+
+  /**
+   * Returns all vertices with edges, in the order they were added.
+   */
+  public Iterable<T> getVertices() {
+    return Sequence.select(vertices, new Func<Vertex<T>, T>() {
+
+      @Override public T apply(Vertex<T> arg) {
+        return arg.vertex;
+      }
+    });
+  }
+
+  /**
+   * Calls visitor once for every distinct edge in the graph, with the kinds of the edge.
+   */
+  public void visitEdges(EdgeVisitor<? super T> visitor) {
+    outEdges.compactAll();
+    for (int vertex = 0; vertex < vertices.size(); vertex++) {
+      T source = vertices.get(vertex).vertex;
+      int[] edges = outEdges.edges(vertex);
+      short[] kinds = outEdges.kinds(vertex);
+      for (int index = 0; index < outEdges.rawDegree(vertex); index++) {
+        visitor.visitEdge(source, vertices.get(edges[index]).vertex, kinds[index] & 0xFFFF);
+      }
+    }
+  }
+
+  /**
+   * Calls visitor once for every distinct edge between two of values, with the kinds of the edge.
+   * Edges are visited grouped by source, with sources in the order of values.
+   */
+  public void visitEdgesWithin(Iterable<? extends T> values, EdgeVisitor<? super T> visitor) {
+    outEdges.compactAll();
+    int[] sources = indicesOf(values);
+    BitSet members = new BitSet(vertices.size());
+    for (int source : sources) {
+      members.set(source);
+    }
+    for (int vertex : sources) {
+      T source = vertices.get(vertex).vertex;
+      int[] edges = outEdges.edges(vertex);
+      short[] kinds = outEdges.kinds(vertex);
+      for (int index = 0; index < outEdges.rawDegree(vertex); index++) {
+        if (members.get(edges[index])) {
+          visitor.visitEdge(source, vertices.get(edges[index]).vertex, kinds[index] & 0xFFFF);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of edges from each group of vertices to each group, where result[a][b]
+   * counts the edges from a vertex in group a to a vertex in group b. groupOf returns the group of
+   * a vertex from 0 to groupCount - 1, or null if it is in no group. One pass over the edges.
+   */
+  public long[][] countEdgesBetweenGroups(Func<? super T, Integer> groupOf, int groupCount) {
+    outEdges.compactAll();
+    int[] groups = groupsOf(groupOf);
+    long[][] result = new long[groupCount][groupCount];
+    for (int vertex = 0; vertex < vertices.size(); vertex++) {
+      if (groups[vertex] < 0) {
+        continue;
+      }
+      long[] row = result[groups[vertex]];
+      int[] edges = outEdges.edges(vertex);
+      for (int index = 0; index < outEdges.rawDegree(vertex); index++) {
+        int group = groups[edges[index]];
+        if (group >= 0) {
+          row[group]++;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of vertices in each group reachable from each group, where result[a][b]
+   * counts the vertices in group b reachable from a vertex in group a, including the vertices of a
+   * itself. Components are visited in topological order, each with a bit set of the groups which
+   * reach it, so the whole matrix takes one pass over the condensed graph. A component's bit set
+   * is released once every component it has an edge to has been visited.
+   */
+  public long[][] countReachableBetweenGroups(Func<? super T, Integer> groupOf, int groupCount) {
+    computeComponents();
+    int[] groups = groupsOf(groupOf);
+    long[][] result = new long[groupCount][groupCount];
+    Adjacency predecessors = condensation.getInEdges();
+    Adjacency successors = condensation.getOutEdges();
+    int count = condensation.componentCount();
+    BitSet[] reachedBy = new BitSet[count];
+    int[] pending = new int[count];
+    for (int component = 0; component < count; component++) {
+      pending[component] = successors.degree(component);
+    }
+    for (int component = count - 1; component >= 0; component--) {
+      BitSet reached = new BitSet(groupCount);
+      for (int member = 0; member < condensation.memberCount(component); member++) {
+        int group = groups[condensation.member(component, member)];
+        if (group >= 0) {
+          reached.set(group);
+        }
+      }
+      int[] sources = predecessors.edges(component);
+      for (int index = 0; index < predecessors.rawDegree(component); index++) {
+        int source = sources[index];
+        reached.or(reachedBy[source]);
+        if (--pending[source] == 0) {
+          reachedBy[source] = null;
+        }
+      }
+      for (int member = 0; member < condensation.memberCount(component); member++) {
+        int group = groups[condensation.member(component, member)];
+        if (group >= 0) {
+          for (int from = reached.nextSetBit(0); from >= 0; from = reached.nextSetBit(from + 1)) {
+            result[from][group]++;
+          }
+        }
+      }
+      if (pending[component] > 0) {
+        reachedBy[component] = reached;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the group of every vertex, or -1 for vertices in no group.
+   */
+  private int[] groupsOf(Func<? super T, Integer> groupOf) {
+    int[] result = new int[vertices.size()];
+    for (int vertex = 0; vertex < result.length; vertex++) {
+      Integer group = groupOf.apply(vertices.get(vertex).vertex);
+      result[vertex] = group == null ? -1 : group;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the subgraph with the edges between two of values.
+   */
+  public DirectedGraph<T> subgraph(Iterable<? extends T> values) {
+    final DirectedGraph<T> result = new DirectedGraph<T>();
+    visitEdgesWithin(values, new EdgeVisitor<T>() {
+
+      @Override public void visitEdge(T source, T destination, int kinds) {
+        result.addEdge(source, destination, kinds);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Returns a graph with the same reachability as this one and only its essential edges. Edges
+   * within a strongly connected component are kept. An edge between components is kept only if
+   * the components' edge is in the transitive reduction of the condensed graph, so an edge which
+   * is implied by a longer path is dropped.
+   */
+  public DirectedGraph<T> transitiveReduction() {
+    computeComponents();
+    Adjacency reduced = condensation.transitiveReduction();
+    DirectedGraph<T> result = new DirectedGraph<T>();
+    for (int vertex = 0; vertex < vertices.size(); vertex++) {
+      T source = vertices.get(vertex).vertex;
+      int sourceComponent = condensation.componentOf(vertex);
+      int[] edges = outEdges.edges(vertex);
+      short[] kinds = outEdges.kinds(vertex);
+      for (int index = 0; index < outEdges.rawDegree(vertex); index++) {
+        int destinationComponent = condensation.componentOf(edges[index]);
+        if (sourceComponent == destinationComponent
+            || reduced.contains(sourceComponent, destinationComponent)) {
+          result.addEdge(source, vertices.get(edges[index]).vertex, kinds[index] & 0xFFFF);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the strongly connected components of the graph. Until the next edge is added,
+   * reachability queries run over the components rather than over individual vertices.
+   */
+  public void computeComponents() {
+    if (condensation == null) {
+      outEdges.compactAll();
+      inEdges.compactAll();
+      condensation = new Condensation(outEdges);
+    }
+  }
+
+  /**
+   * Returns the vertices of every cycle in the graph, one set per strongly connected component
+   * which contains a cycle.
+   */
+  public List<Set<T>> getCycles() {
+    computeComponents();
+    List<Set<T>> result = new ArrayList<Set<T>>();
+    BitSet component = new BitSet();
+    for (int index = 0; index < condensation.componentCount(); index++) {
+      if (condensation.isCyclic(index)) {
+        component.set(index);
+        BitSet members = new BitSet(vertices.size());
+        condensation.addMembers(component, members);
+        component.clear(index);
+        result.add(new VertexSet(members));
+      }
+    }
+    return result;
+  }
+
   /**
    * Get or create the node for a vertex.
    */
   private Vertex<T> nodeOfVertex(T vertex) {
     Vertex<T> result = existingNodeOfVertex(vertex);
     if (result == null) {
-      result = new Vertex<T>(vertex);
+      result = new Vertex<T>(vertex, vertices.size());
       nodes.put(vertex, result);
+      vertices.add(result);
+      outEdges.addVertex();
+      inEdges.addVertex();
     }
     return result;
   }
@@ -103,7 +371,7 @@ public class DirectedGraph<T> {
   /**
    * Get an existing node for a vertex or return null if the vertex has not been added to the graph.
    */
-  private Vertex<T> existingNodeOfVertex(T vertex) {
+  private Vertex<T> existingNodeOfVertex(Object vertex) {
     return nodes.get(vertex);
   }
 
@@ -113,7 +381,7 @@ public class DirectedGraph<T> {
    */
   public Set<T> outEdgesOfVertex(T vertex) {
     Vertex<T> node = existingNodeOfVertex(vertex);
-    return node == null ? ImmutableSet.<T>of() : node.outEdges;
+    return node == null ? emptySet : new EdgeSet(outEdges, node.index);
   }
 
   /**
@@ -122,99 +390,130 @@ public class DirectedGraph<T> {
    */
   public Set<T> inEdgesOfVertex(T vertex) {
     Vertex<T> node = existingNodeOfVertex(vertex);
-    return node == null ? ImmutableSet.<T>of() : node.inEdges;
+    return node == null ? emptySet : new EdgeSet(inEdges, node.index);
   }
 
   /**
-   * Computes reachability and distances for a directed graph.
+   * Returns the numbers of the roots which are vertices of this graph, in the order given. Roots
+   * without edges are skipped.
    */
-  private static class Reachability<T> {
-    private final HashMap<T, Integer> queued;
-    private final ArrayList<T> todo;
-    private final HashSet<T> terminals;
-    private Integer terminalDistance;
-    private final Func<? super T, ? extends Iterable<? extends T>> getEdges;
-
-    private Reachability(Func<? super T, ? extends Iterable<? extends T>> getEdges,
-        Iterable<? extends T> terminals) {
-      this.queued = new HashMap<T, Integer>();
-      this.todo = new ArrayList<T>();
-      this.getEdges = getEdges;
-      this.terminals = Sequence.createSet(terminals);
-    }
-
-    /**
-     * Compute reachability and distance for the given roots.
-     */
-    private void compute(Iterable<? extends T> roots) {
-      queueAll(roots, 0);
-      while (!todo.isEmpty()) {
-        T value = todo.remove(todo.size() - 1);
-        Integer distance = queued.get(value) + 1;
-        if (terminalDistance == null || distance <= terminalDistance) {
-          queueAll(getEdges.apply(value), distance);
+  private int[] indicesOf(Iterable<? extends T> roots) {
+    int[] result = new int[16];
+    int count = 0;
+    for (T root : roots) {
+      Vertex<T> node = existingNodeOfVertex(root);
+      if (node != null) {
+        if (count == result.length) {
+          result = Arrays.copyOf(result, count * 2);
         }
+        result[count++] = node.index;
       }
     }
+    return Arrays.copyOf(result, count);
+  }
 
-    /**
-     * Queue all unqueued values with distance of distance.
-     */
-    private void queueAll(Iterable<? extends T> values, Integer distance) {
-      for (T value : values) {
-        if (!queued.containsKey(value)) {
-          queued.put(value, distance);
-          if (terminalDistance != null && terminals.contains(value)) {
-            terminalDistance = distance;
+  /**
+   * Returns the numbers of every vertex reachable from roots, including the roots, following the
+   * edges in adjacency. Works equally over vertices and over components. reverse must hold the
+   * same edges reversed. Visits each vertex once using a primitive work queue which grows with
+   * the result, so a small closure allocates little. Once a whole level of the search is large
+   * enough the rest of the search is handed to ParallelBreadthFirstSearch.
+   */
+  private static BitSet reach(Adjacency adjacency, Adjacency reverse, int[] roots) {
+    BitSet visited = new BitSet();
+    int[] queue = new int[Math.max(16, roots.length)];
+    int tail = 0;
+    for (int root : roots) {
+      if (!visited.get(root)) {
+        visited.set(root);
+        queue[tail++] = root;
+      }
+    }
+    int levelStart = 0;
+    for (int head = 0; head < tail; head++) {
+      if (head == levelStart) {
+        if (ParallelBreadthFirstSearch.isWorthwhile(tail - levelStart)) {
+          reverse.compactAll();
+          ParallelBreadthFirstSearch.expand(
+              adjacency, reverse, visited, Arrays.copyOfRange(queue, levelStart, tail));
+          break;
+        }
+        levelStart = tail;
+      }
+      int vertex = queue[head];
+      int[] edges = adjacency.edges(vertex);
+      for (int index = adjacency.rawDegree(vertex) - 1; index >= 0; index--) {
+        int next = edges[index];
+        if (!visited.get(next)) {
+          visited.set(next);
+          if (tail == queue.length) {
+            queue = Arrays.copyOf(queue, tail * 2);
           }
-          todo.add(value);
+          queue[tail++] = next;
         }
       }
     }
+    return visited;
+  }
 
-    /**
-     * Returns the set of reachable vertices for this computation.
-     */
-    private Set<T> canReach() {
-      return queued.keySet();
-    }
-
-    /**
-     * Returns the set of vertices reachable from any vertex in roots via the supplied getEdges.
-     */
-    public static <T> Set<T> canReach(Func<T, Set<T>> getEdges, Iterable<? extends T> roots) {
-      Reachability<T> reachability = new Reachability<T>(getEdges, EmptyIterable.<T>value());
-      reachability.compute(roots);
-      return reachability.canReach();
+  /**
+   * Returns the vertices reachable from roots by the edges in adjacency, grouped by their minimum
+   * distance from roots. The search proceeds one layer at a time and stops after the first layer
+   * which contains a vertex in sinks, so it never looks further than the nearest sink.
+   */
+  private ArrayList<ArrayList<T>> distancesBy(
+      Adjacency adjacency, Iterable<? extends T> roots, Iterable<? extends T> sinks) {
+    HashSet<T> sinkSet = Sequence.createSet(sinks);
+    BitSet isSink = new BitSet(vertices.size());
+    for (int sink : indicesOf(sinkSet)) {
+      isSink.set(sink);
     }
 
-    /**
-     * Returns the reachable vertices by distance.
-     */
-    private ArrayList<ArrayList<T>> distancesBy() {
-      ArrayList<ArrayList<T>> result = new ArrayList<ArrayList<T>>();
-      for (Entry<T, Integer> entry : queued.entrySet()) {
-        int distance = entry.getValue();
-        T value = entry.getKey();
-        while (distance >= result.size()) {
-          result.add(new ArrayList<T>());
+    ArrayList<ArrayList<T>> result = new ArrayList<ArrayList<T>>();
+    ArrayList<T> layer = new ArrayList<T>();
+    HashSet<T> isolatedRoots = new HashSet<T>();
+    BitSet visited = new BitSet(vertices.size());
+    int[] queue = new int[vertices.size()];
+    int tail = 0;
+    boolean foundSink = false;
+    for (T root : roots) {
+      Vertex<T> node = existingNodeOfVertex(root);
+      if (node == null) {
+        if (isolatedRoots.add(root)) {
+          layer.add(root);
+          foundSink |= sinkSet.contains(root);
         }
-        result.get(distance).add(value);
+      } else if (!visited.get(node.index)) {
+        visited.set(node.index);
+        queue[tail++] = node.index;
+        layer.add(root);
+        foundSink |= isSink.get(node.index);
       }
-      return result;
     }
+    result.add(layer);
 
-    /**
-     * Returns the vertices reachable from roots by the supplied getEdges by distance. So
-     * distancesBy(getEdges, roots, sinks).getAt(n) returns the vertices a distance of n from roots.
-     * Limits results to distances less than or equal to the minimum distance from roots to sinks.
-     */
-    public static <T> ArrayList<ArrayList<T>> distancesBy(
-        Func<T, Set<T>> getEdges, Iterable<? extends T> roots, Iterable<? extends T> sinks) {
-      Reachability<T> reachability = new Reachability<T>(getEdges, sinks);
-      reachability.compute(roots);
-      return reachability.distancesBy();
+    int head = 0;
+    while (!foundSink && head < tail) {
+      int layerEnd = tail;
+      layer = new ArrayList<T>();
+      for (; head < layerEnd; head++) {
+        int vertex = queue[head];
+        int[] edges = adjacency.edges(vertex);
+        for (int index = adjacency.rawDegree(vertex) - 1; index >= 0; index--) {
+          int next = edges[index];
+          if (!visited.get(next)) {
+            visited.set(next);
+            queue[tail++] = next;
+            layer.add(vertices.get(next).vertex);
+            foundSink |= isSink.get(next);
+          }
+        }
+      }
+      if (!layer.isEmpty()) {
+        result.add(layer);
+      }
     }
+    return result;
   }
 
   /**
@@ -225,17 +524,393 @@ public class DirectedGraph<T> {
   }
 
   /**
-   * Returns all vertices which are reachable from any vertex in roots.
+   * Returns all vertices which are reachable from any vertex in roots. Includes the roots which
+   * are vertices of this graph. The result is a read only view backed by a bitset.
    */
   public Set<T> reachableFrom(Iterable<? extends T> roots) {
-    return Reachability.canReach(getOutEdgesOfVertex, roots);
+    return new VertexSet(reachableFrom(indicesOf(roots)));
+  }
+
+  private BitSet reachableFrom(int[] roots) {
+    if (condensation != null) {
+      return reachComponents(condensation.getOutEdges(), condensation.getInEdges(), roots);
+    }
+    outEdges.compactAll();
+    return reach(outEdges, inEdges, roots);
   }
 
   /**
-   * Returns all vertices which can reach a vertex in sinks.
+   * Returns all vertices which can reach a vertex in sinks. Includes the sinks which are vertices
+   * of this graph. The result is a read only view backed by a bitset.
    */
   public Set<T> canReach(Iterable<? extends T> sinks) {
-    return Reachability.canReach(getInEdgesOfVertex, sinks);
+    if (condensation != null) {
+      return new VertexSet(reachComponents(
+          condensation.getInEdges(), condensation.getOutEdges(), indicesOf(sinks)));
+    }
+    inEdges.compactAll();
+    return new VertexSet(reach(inEdges, outEdges, indicesOf(sinks)));
+  }
+
+  /**
+   * Returns all vertices which are reachable from any vertex in roots by a path of at most
+   * maxDepth edges. Includes the roots which are vertices of this graph. Vertices further than
+   * maxDepth from the roots are never visited.
+   */
+  public Set<T> reachableFrom(Iterable<? extends T> roots, int maxDepth) {
+    return reachableFrom(roots, maxDepth, 0);
+  }
+
+  /**
+   * Returns all vertices which are reachable from any vertex in roots by a path of at most
+   * maxDepth edges, each of which has one of the given kinds. A kinds of 0 follows every edge.
+   * Includes the roots which are vertices of this graph.
+   */
+  public Set<T> reachableFrom(Iterable<? extends T> roots, int maxDepth, int kinds) {
+    return reachWithin(outEdges, indicesOf(roots), maxDepth, kinds);
+  }
+
+  /**
+   * Returns all vertices which can reach a vertex in sinks by a path of at most maxDepth edges.
+   * Includes the sinks which are vertices of this graph. Vertices further than maxDepth from the
+   * sinks are never visited.
+   */
+  public Set<T> canReach(Iterable<? extends T> sinks, int maxDepth) {
+    return canReach(sinks, maxDepth, 0);
+  }
+
+  /**
+   * Returns all vertices which can reach a vertex in sinks by a path of at most maxDepth edges,
+   * each of which has one of the given kinds. A kinds of 0 follows every edge. Includes the sinks
+   * which are vertices of this graph.
+   */
+  public Set<T> canReach(Iterable<? extends T> sinks, int maxDepth, int kinds) {
+    return reachWithin(inEdges, indicesOf(sinks), maxDepth, kinds);
+  }
+
+  /**
+   * Returns every vertex within maxDepth edges of roots, following the edges in adjacency which
+   * have one of the given kinds, or every edge if kinds is 0. Allocates in proportion to the
+   * vertices found, not to the size of the graph: the visited bits are shared between searches
+   * and only the bits of the vertices found are cleared afterwards.
+   */
+  private synchronized Set<T> reachWithin(
+      Adjacency adjacency, int[] roots, int maxDepth, int kinds) {
+    BitSet visited = boundedVisited;
+    int[] queue = new int[Math.max(16, roots.length)];
+    int tail = 0;
+    for (int root : roots) {
+      if (!visited.get(root)) {
+        visited.set(root);
+        queue[tail++] = root;
+      }
+    }
+    int head = 0;
+    for (int depth = 0; depth < maxDepth && head < tail; depth++) {
+      int layerEnd = tail;
+      for (; head < layerEnd; head++) {
+        int vertex = queue[head];
+        int[] edges = adjacency.edges(vertex);
+        short[] edgeKinds = adjacency.kinds(vertex);
+        for (int index = adjacency.rawDegree(vertex) - 1; index >= 0; index--) {
+          int next = edges[index];
+          if (!visited.get(next) && (kinds == 0 || (edgeKinds[index] & kinds) != 0)) {
+            visited.set(next);
+            if (tail == queue.length) {
+              queue = Arrays.copyOf(queue, tail * 2);
+            }
+            queue[tail++] = next;
+          }
+        }
+      }
+    }
+
+    HashSet<T> result = new HashSet<T>(tail * 2);
+    for (int index = 0; index < tail; index++) {
+      visited.clear(queue[index]);
+      result.add(vertices.get(queue[index]).vertex);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a shortest path from a vertex in roots to a vertex in sinks, starting with the root and
+   * ending with the sink. Returns null if no sink is reachable from the roots. Searches forward
+   * from the roots and backward from the sinks at the same time, always extending the side with
+   * the smaller frontier, until the two searches meet.
+   */
+  public List<T> shortestPath(Iterable<? extends T> roots, Iterable<? extends T> sinks) {
+    int count = vertices.size();
+    int[] forwardParent = new int[count];
+    int[] backwardParent = new int[count];
+    int[] forwardDistance = new int[count];
+    int[] backwardDistance = new int[count];
+    Arrays.fill(forwardParent, -1);
+    Arrays.fill(backwardParent, -1);
+    int[] forwardQueue = new int[count];
+    int[] backwardQueue = new int[count];
+    int forwardHead = 0;
+    int forwardTail = 0;
+    int backwardHead = 0;
+    int backwardTail = 0;
+    for (int root : indicesOf(roots)) {
+      if (forwardParent[root] == -1) {
+        forwardParent[root] = root;
+        forwardQueue[forwardTail++] = root;
+      }
+    }
+    for (int sink : indicesOf(sinks)) {
+      if (backwardParent[sink] == -1) {
+        backwardParent[sink] = sink;
+        backwardQueue[backwardTail++] = sink;
+        if (forwardParent[sink] != -1) {
+          return pathThrough(sink, forwardParent, backwardParent);
+        }
+      }
+    }
+
+    while (forwardHead < forwardTail && backwardHead < backwardTail) {
+      int meeting = -1;
+      int best = Integer.MAX_VALUE;
+      if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+        int layerEnd = forwardTail;
+        for (; forwardHead < layerEnd; forwardHead++) {
+          int vertex = forwardQueue[forwardHead];
+          int[] edges = outEdges.edges(vertex);
+          for (int index = outEdges.rawDegree(vertex) - 1; index >= 0; index--) {
+            int next = edges[index];
+            if (forwardParent[next] == -1) {
+              forwardParent[next] = vertex;
+              forwardDistance[next] = forwardDistance[vertex] + 1;
+              forwardQueue[forwardTail++] = next;
+              if (backwardParent[next] != -1
+                  && forwardDistance[next] + backwardDistance[next] < best) {
+                best = forwardDistance[next] + backwardDistance[next];
+                meeting = next;
+              }
+            }
+          }
+        }
+      } else {
+        int layerEnd = backwardTail;
+        for (; backwardHead < layerEnd; backwardHead++) {
+          int vertex = backwardQueue[backwardHead];
+          int[] edges = inEdges.edges(vertex);
+          for (int index = inEdges.rawDegree(vertex) - 1; index >= 0; index--) {
+            int next = edges[index];
+            if (backwardParent[next] == -1) {
+              backwardParent[next] = vertex;
+              backwardDistance[next] = backwardDistance[vertex] + 1;
+              backwardQueue[backwardTail++] = next;
+              if (forwardParent[next] != -1
+                  && forwardDistance[next] + backwardDistance[next] < best) {
+                best = forwardDistance[next] + backwardDistance[next];
+                meeting = next;
+              }
+            }
+          }
+        }
+      }
+      if (meeting != -1) {
+        return pathThrough(meeting, forwardParent, backwardParent);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the path from a root through meeting to a sink. Roots and sinks are their own parents.
+   */
+  private List<T> pathThrough(int meeting, int[] forwardParent, int[] backwardParent) {
+    ArrayList<T> result = new ArrayList<T>();
+    for (int vertex = meeting; ; vertex = forwardParent[vertex]) {
+      result.add(vertices.get(vertex).vertex);
+      if (forwardParent[vertex] == vertex) {
+        break;
+      }
+    }
+    Collections.reverse(result);
+    for (int vertex = meeting; backwardParent[vertex] != vertex; ) {
+      vertex = backwardParent[vertex];
+      result.add(vertices.get(vertex).vertex);
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if any vertex in roots can reach a vertex in sinks by one or more edges, or if a
+   * vertex is in both. Builds a reachability index over the strongly connected components on first
+   * use, which is kept until the next edge is added.
+   */
+  public boolean reaches(Iterable<? extends T> roots, Iterable<? extends T> sinks) {
+    computeComponents();
+    if (reachabilityIndex == null) {
+      reachabilityIndex = new ReachabilityIndex(condensation);
+    }
+    return reachabilityIndex.reaches(
+        componentsOf(indicesOf(roots)), componentsOf(indicesOf(sinks)));
+  }
+
+  private int[] componentsOf(int[] indices) {
+    int[] result = new int[indices.length];
+    for (int index = 0; index < indices.length; index++) {
+      result[index] = condensation.componentOf(indices[index]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the numbers of every vertex in a component reachable from the components of roots,
+   * following the edges between components in adjacency.
+   */
+  private BitSet reachComponents(Adjacency adjacency, Adjacency reverse, int[] roots) {
+    BitSet result = new BitSet(vertices.size());
+    condensation.addMembers(reach(adjacency, reverse, componentsOf(roots)), result);
+    return result;
+  }
+
+  /**
+   * Returns the vertices reachable from through which are not reachable from any vertex in entries
+   * without passing through a vertex in through. These are the vertices which would no longer be
+   * reachable from entries if through were removed. Entries which are in through are ignored.
+   */
+  public Set<T> reachableOnlyThrough(Iterable<? extends T> entries, Iterable<? extends T> through) {
+    int[] throughIndices = indicesOf(through);
+    BitSet result = reachableFrom(throughIndices);
+    BitSet visited = new BitSet(vertices.size());
+    for (int vertex : throughIndices) {
+      visited.set(vertex);
+    }
+    int[] queue = new int[vertices.size()];
+    int tail = 0;
+    for (int entry : indicesOf(entries)) {
+      if (!visited.get(entry)) {
+        visited.set(entry);
+        queue[tail++] = entry;
+        result.clear(entry);
+      }
+    }
+    outEdges.compactAll();
+    for (int head = 0; head < tail; head++) {
+      int vertex = queue[head];
+      int[] edges = outEdges.edges(vertex);
+      for (int index = outEdges.rawDegree(vertex) - 1; index >= 0; index--) {
+        int next = edges[index];
+        if (!visited.get(next)) {
+          visited.set(next);
+          queue[tail++] = next;
+          result.clear(next);
+        }
+      }
+    }
+    return new VertexSet(result);
+  }
+
+  /**
+   * Returns an estimate of the number of vertices reachable from each vertex in values, including
+   * itself, keyed by vertex. Values which are not vertices of this graph are omitted. Estimates
+   * for every vertex are computed in a single pass over the strongly connected components using
+   * HyperLogLog sketches with 2^precision registers. precision must be from 4 to 16.
+   */
+  public Map<T, Long> estimateReachableFromCounts(Iterable<? extends T> values, int precision) {
+    return estimateCounts(values, precision, true);
+  }
+
+  /**
+   * Returns an estimate of the number of vertices which can reach each vertex in values, including
+   * itself, keyed by vertex. Values which are not vertices of this graph are omitted.
+   */
+  public Map<T, Long> estimateCanReachCounts(Iterable<? extends T> values, int precision) {
+    return estimateCounts(values, precision, false);
+  }
+
+  /**
+   * Computes a sketch of the closure of every component, visiting each component after all the
+   * components it reaches, and merging their sketches into its own. A sketch is released once
+   * every component which needs it has been visited.
+   */
+  private Map<T, Long> estimateCounts(
+      Iterable<? extends T> values, int precision, boolean forward) {
+    computeComponents();
+    int[] indices = indicesOf(values);
+    int count = condensation.componentCount();
+    Adjacency successors = forward ? condensation.getOutEdges() : condensation.getInEdges();
+    Adjacency predecessors = forward ? condensation.getInEdges() : condensation.getOutEdges();
+    HashMap<Integer, Long> estimates = new HashMap<Integer, Long>();
+    for (int vertex : indices) {
+      estimates.put(condensation.componentOf(vertex), null);
+    }
+
+    HyperLogLog[] sketches = new HyperLogLog[count];
+    int[] pending = new int[count];
+    for (int component = 0; component < count; component++) {
+      pending[component] = predecessors.rawDegree(component);
+    }
+    for (int index = 0; index < count; index++) {
+      int component = forward ? index : count - 1 - index;
+      HyperLogLog sketch = null;
+      int[] edges = successors.edges(component);
+      for (int edge = successors.rawDegree(component) - 1; edge >= 0; edge--) {
+        int successor = edges[edge];
+        HyperLogLog successorSketch = sketches[successor];
+        if (--pending[successor] == 0) {
+          sketches[successor] = null;
+          if (sketch == null) {
+            // the last user of a sketch takes it over rather than copying it
+            sketch = successorSketch;
+            continue;
+          }
+        }
+        if (sketch == null) {
+          sketch = successorSketch.copy();
+        } else {
+          sketch.addAll(successorSketch);
+        }
+      }
+      if (sketch == null) {
+        sketch = new HyperLogLog(precision);
+      }
+      for (int member = 0; member < condensation.memberCount(component); member++) {
+        sketch.add(condensation.member(component, member));
+      }
+      if (estimates.containsKey(component)) {
+        estimates.put(component, sketch.estimate());
+      }
+      if (pending[component] > 0) {
+        sketches[component] = sketch;
+      }
+    }
+
+    Map<T, Long> result = new HashMap<T, Long>();
+    for (int vertex : indices) {
+      result.put(vertices.get(vertex).vertex, estimates.get(condensation.componentOf(vertex)));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the dominator tree of the graph from roots. The result is only valid until the next
+   * edge is added.
+   */
+  public Dominators<T> dominators(Iterable<? extends T> roots) {
+    outEdges.compactAll();
+    inEdges.compactAll();
+    return new Dominators<T>(this, outEdges, inEdges, indicesOf(roots));
+  }
+
+  /**
+   * Returns the number of vertex, or -1 if it has no edges.
+   */
+  int indexOf(Object vertex) {
+    Vertex<T> node = existingNodeOfVertex(vertex);
+    return node == null ? -1 : node.index;
+  }
+
+  /**
+   * Returns the vertex with the given number.
+   */
+  T vertexAt(int index) {
+    return vertices.get(index).vertex;
   }
 
   /**
@@ -261,7 +936,7 @@ public class DirectedGraph<T> {
    */
   public ArrayList<ArrayList<T>> distancesFrom(
       Iterable<? extends T> roots, Iterable<? extends T> sinks) {
-    return Reachability.distancesBy(getOutEdgesOfVertex, roots, sinks);
+    return distancesBy(outEdges, roots, sinks);
   }
 
   /**
@@ -271,22 +946,98 @@ public class DirectedGraph<T> {
    */
   public ArrayList<ArrayList<T>> distancesTo(
       Iterable<? extends T> sinks, Iterable<? extends T> roots) {
-    return Reachability.distancesBy(getInEdgesOfVertex, sinks, roots);
+    return distancesBy(inEdges, sinks, roots);
   }
 
-  private final Func<T, Set<T>> getOutEdgesOfVertex =
-      new Func<T, Set<T>>() {
+  private final Set<T> emptySet = new VertexSet(new BitSet());
 
-        @Override public Set<T> apply(T arg) {
-          return outEdgesOfVertex(arg);
+  /**
+   * A read only set of vertices backed by a bitset of vertex numbers.
+   */
+  private final class VertexSet extends AbstractSet<T> {
+    private final BitSet members;
+    private final int size;
+
+    public VertexSet(BitSet members) {
+      this.members = members;
+      this.size = members.cardinality();
+    }
+
+    @Override public boolean contains(Object value) {
+      Vertex<T> node = existingNodeOfVertex(value);
+      return node != null && members.get(node.index);
+    }
+
+    @Override public int size() {
+      return size;
+    }
+
+    @Override public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        private int next = members.nextSetBit(0);
+
+        @Override public boolean hasNext() {
+          return next >= 0;
+        }
+
+        @Override public T next() {
+          if (next < 0) {
+            throw new NoSuchElementException();
+          }
+          T result = vertices.get(next).vertex;
+          next = members.nextSetBit(next + 1);
+          return result;
+        }
+
+        @Override public void remove() {
+          throw new UnsupportedOperationException();
         }
       };
+    }
+  }
 
-  private final Func<T, Set<T>> getInEdgesOfVertex =
-      new Func<T, Set<T>>() {
+  /**
+   * A read only view of the distinct vertices adjacent to a vertex.
+   */
+  private final class EdgeSet extends AbstractSet<T> {
+    private final Adjacency adjacency;
+    private final int vertex;
+
+    public EdgeSet(Adjacency adjacency, int vertex) {
+      this.adjacency = adjacency;
+      this.vertex = vertex;
+    }
+
+    @Override public boolean contains(Object value) {
+      Vertex<T> node = existingNodeOfVertex(value);
+      return node != null && adjacency.contains(vertex, node.index);
+    }
+
+    @Override public int size() {
+      return adjacency.degree(vertex);
+    }
 
-        @Override public Set<T> apply(T arg) {
-          return inEdgesOfVertex(arg);
+    @Override public Iterator<T> iterator() {
+      final int[] targets = adjacency.targets(vertex);
+      final int count = adjacency.degree(vertex);
+      return new Iterator<T>() {
+        private int index;
+
+        @Override public boolean hasNext() {
+          return index < count;
+        }
+
+        @Override public T next() {
+          if (index >= count) {
+            throw new NoSuchElementException();
+          }
+          return vertices.get(targets[index++]).vertex;
+        }
+
+        @Override public void remove() {
+          throw new UnsupportedOperationException();
         }
       };
+    }
+  }
 }
@@ -0,0 +1,167 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The dominator tree of a graph from a set of roots. A vertex d dominates v if every path from the
+ * roots to v passes through d, so removing d makes v unreachable. Computed with the iterative
+ * algorithm of Cooper, Harvey and Kennedy over a virtual vertex whose successors are the roots.
+ *
+ * @param <T> the type of the vertices in the graph.
+ */
+public final class Dominators<T> {
+  private final DirectedGraph<T> graph;
+  // immediate dominator of each vertex; the virtual root is vertex count, unreachable vertices -1
+  private final int[] immediateDominator;
+  // number of vertices dominated by each vertex, including itself
+  private final int[] dominatedCount;
+
+  Dominators(DirectedGraph<T> graph, Adjacency outEdges, Adjacency inEdges, int[] roots) {
+    this.graph = graph;
+    int count = outEdges.size();
+    int virtualRoot = count;
+    BitSet isRoot = new BitSet(count);
+    for (int root : roots) {
+      isRoot.set(root);
+    }
+
+    // reverse post order of the vertices reachable from the roots
+    int[] order = new int[count + 1];
+    int[] orderNumber = new int[count + 1];
+    Arrays.fill(orderNumber, -1);
+    int orderSize = postOrder(outEdges, roots, order);
+    for (int index = 0; index < orderSize; index++) {
+      orderNumber[order[index]] = orderSize - index;
+    }
+    orderNumber[virtualRoot] = 0;
+
+    int[] dominator = new int[count + 1];
+    Arrays.fill(dominator, -1);
+    dominator[virtualRoot] = virtualRoot;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int index = orderSize - 1; index >= 0; index--) {
+        int vertex = order[index];
+        int newDominator = isRoot.get(vertex) ? virtualRoot : -1;
+        int[] predecessors = inEdges.edges(vertex);
+        for (int edge = inEdges.rawDegree(vertex) - 1; edge >= 0; edge--) {
+          int predecessor = predecessors[edge];
+          if (dominator[predecessor] != -1) {
+            newDominator = newDominator == -1
+                ? predecessor
+                : intersect(dominator, orderNumber, predecessor, newDominator);
+          }
+        }
+        if (dominator[vertex] != newDominator) {
+          dominator[vertex] = newDominator;
+          changed = true;
+        }
+      }
+    }
+
+    dominatedCount = new int[count + 1];
+    for (int index = 0; index < orderSize; index++) {
+      int vertex = order[index];
+      dominatedCount[vertex]++;
+      dominatedCount[dominator[vertex]] += dominatedCount[vertex];
+    }
+    immediateDominator = dominator;
+  }
+
+  /**
+   * Fills order with the vertices reachable from roots in post order and returns their number.
+   */
+  private static int postOrder(Adjacency edges, int[] roots, int[] order) {
+    int count = edges.size();
+    BitSet visited = new BitSet(count);
+    int[] callStack = new int[count];
+    int[] nextEdge = new int[count];
+    int size = 0;
+    for (int root : roots) {
+      if (visited.get(root)) {
+        continue;
+      }
+      visited.set(root);
+      int depth = 0;
+      callStack[depth] = root;
+      nextEdge[depth++] = 0;
+      while (depth > 0) {
+        int vertex = callStack[depth - 1];
+        if (nextEdge[depth - 1] < edges.rawDegree(vertex)) {
+          int next = edges.edges(vertex)[nextEdge[depth - 1]++];
+          if (!visited.get(next)) {
+            visited.set(next);
+            callStack[depth] = next;
+            nextEdge[depth++] = 0;
+          }
+        } else {
+          order[size++] = vertex;
+          depth--;
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns the closest common dominator of left and right.
+   */
+  private static int intersect(int[] dominator, int[] orderNumber, int left, int right) {
+    while (left != right) {
+      while (orderNumber[left] > orderNumber[right]) {
+        left = dominator[left];
+      }
+      while (orderNumber[right] > orderNumber[left]) {
+        right = dominator[right];
+      }
+    }
+    return left;
+  }
+
+  /**
+   * Is vertex reachable from the roots.
+   */
+  public boolean isReachable(T vertex) {
+    int index = graph.indexOf(vertex);
+    return index != -1 && immediateDominator[index] != -1;
+  }
+
+  /**
+   * Returns the number of vertices which vertex dominates, including itself. These are the
+   * vertices which would become unreachable from the roots if vertex were removed. Returns 0 if
+   * vertex is not reachable from the roots.
+   */
+  public int dominatedCount(T vertex) {
+    int index = graph.indexOf(vertex);
+    return index == -1 ? 0 : dominatedCount[index];
+  }
+
+  /**
+   * Returns the immediate dominator of vertex, or null if vertex is a root or is not reachable.
+   */
+  public T immediateDominator(T vertex) {
+    int index = graph.indexOf(vertex);
+    if (index == -1 || immediateDominator[index] == -1
+        || immediateDominator[index] == immediateDominator.length - 1) {
+      return null;
+    }
+    return graph.vertexAt(immediateDominator[index]);
+  }
+}
@@ -0,0 +1,116 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver.util;
+
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch: an estimate of the number of distinct values added to it, using 2^precision
+ * one byte registers. The standard error of the estimate is about 1.04 / sqrt(2^precision).
+ * Sketches with the same precision can be merged, giving a sketch of the union of their values.
+ */
+final class HyperLogLog {
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 16;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException();
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  private HyperLogLog(HyperLogLog other) {
+    this.precision = other.precision;
+    this.registers = Arrays.copyOf(other.registers, other.registers.length);
+  }
+
+  public HyperLogLog copy() {
+    return new HyperLogLog(this);
+  }
+
+  /**
+   * Adds a value to the sketch. Values are ints, which are hashed before being added.
+   */
+  public void add(int value) {
+    long hash = hash(value);
+    int register = (int) (hash >>> (64 - precision));
+    int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+    if (registers[register] < rank) {
+      registers[register] = (byte) rank;
+    }
+  }
+
+  /**
+   * Adds all the values added to other to this sketch.
+   */
+  public void addAll(HyperLogLog other) {
+    byte[] otherRegisters = other.registers;
+    for (int index = 0; index < registers.length; index++) {
+      if (registers[index] < otherRegisters[index]) {
+        registers[index] = otherRegisters[index];
+      }
+    }
+  }
+
+  /**
+   * Returns the estimated number of distinct values added to the sketch.
+   */
+  public long estimate() {
+    int count = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = alpha(count) * count * count / sum;
+    if (estimate <= 2.5 * count && zeros > 0) {
+      // linear counting is more accurate for small sets
+      estimate = count * Math.log((double) count / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int count) {
+    switch (count) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / count);
+    }
+  }
+
+  /**
+   * Returns a well mixed 64 bit hash of value.
+   */
+  private static long hash(int value) {
+    long hash = value + 0x9E3779B97F4A7C15L;
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+}
@@ -0,0 +1,279 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A level synchronous breadth first search which expands each frontier on all available
+ * processors. Each level is expanded either top down - scanning the edges leaving the frontier -
+ * or bottom up - scanning the unvisited vertices for an edge back into the frontier - whichever is
+ * expected to examine fewer edges. See Beamer, Asanovic and Patterson, "Direction-Optimizing
+ * Breadth-First Search".
+ *
+ * <p>Only worthwhile on large frontiers; DirectedGraph switches to it once a frontier grows past
+ * the frontier threshold, which defaults to DirectedGraph.DEFAULT_FRONTIER_THRESHOLD vertices.
+ */
+final class ParallelBreadthFirstSearch {
+  // Switch to bottom up when the frontier's edges exceed 1/ALPHA of the unexplored edges, and
+  // back to top down when the frontier shrinks below 1/BETA of the vertices.
+  private static final int ALPHA = 14;
+  private static final int BETA = 24;
+
+  private static final int TASKS_PER_THREAD = 4;
+  private static int threads = Runtime.getRuntime().availableProcessors();
+  private static int frontierThreshold = DirectedGraph.DEFAULT_FRONTIER_THRESHOLD;
+  private static ExecutorService executor;
+
+  private final Adjacency forward;
+  private final Adjacency backward;
+  private final int vertexCount;
+  private final AtomicLongArray visited;
+
+  private ParallelBreadthFirstSearch(Adjacency forward, Adjacency backward, BitSet visited) {
+    this.forward = forward;
+    this.backward = backward;
+    this.vertexCount = forward.size();
+    this.visited = new AtomicLongArray((vertexCount + 63) >>> 6);
+    for (int vertex = visited.nextSetBit(0); vertex >= 0; vertex = visited.nextSetBit(vertex + 1)) {
+      this.visited.set(vertex >>> 6, this.visited.get(vertex >>> 6) | (1L << vertex));
+    }
+  }
+
+  /**
+   * Is a frontier of this size worth handing to expand().
+   */
+  public static synchronized boolean isWorthwhile(int frontierSize) {
+    return threads > 1 && frontierSize >= frontierThreshold;
+  }
+
+  /**
+   * Sets the number of threads which expand a frontier, and the smallest frontier which is
+   * expanded in parallel. One thread disables the parallel search.
+   */
+  public static synchronized void setParallelism(int threadCount, int threshold) {
+    if (threadCount != threads && executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    threads = threadCount;
+    frontierThreshold = threshold;
+  }
+
+  /**
+   * Completes a breadth first search following forward edges. backward must hold the same edges
+   * reversed. visited holds every vertex found so far, and frontier the vertices found at the last
+   * level. On return visited holds every vertex reachable from the frontier. Neither adjacency may
+   * be modified during the search.
+   */
+  public static void expand(Adjacency forward, Adjacency backward, BitSet visited, int[] frontier) {
+    new ParallelBreadthFirstSearch(forward, backward, visited).run(frontier, visited);
+  }
+
+  private void run(int[] frontier, BitSet result) {
+    long unexploredEdges = 0;
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      if (!isVisited(vertex)) {
+        unexploredEdges += forward.rawDegree(vertex);
+      }
+    }
+
+    boolean isBottomUp = false;
+    while (frontier.length > 0) {
+      long frontierEdges = 0;
+      for (int vertex : frontier) {
+        frontierEdges += forward.rawDegree(vertex);
+      }
+      if (isBottomUp) {
+        isBottomUp = frontier.length >= vertexCount / BETA;
+      } else {
+        isBottomUp = frontierEdges > unexploredEdges / ALPHA;
+      }
+
+      frontier = isBottomUp ? bottomUpStep(frontier) : topDownStep(frontier);
+      for (int vertex : frontier) {
+        unexploredEdges -= forward.rawDegree(vertex);
+        result.set(vertex);
+      }
+    }
+  }
+
+  /**
+   * Expands the frontier by following the edges leaving it. Vertices are claimed with a compare
+   * and swap so each is added to the next frontier exactly once.
+   */
+  private int[] topDownStep(final int[] frontier) {
+    List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+    int chunk = chunkSize(frontier.length);
+    for (int start = 0; start < frontier.length; start += chunk) {
+      final int begin = start;
+      final int end = Math.min(frontier.length, start + chunk);
+      tasks.add(new Callable<int[]>() {
+
+        @Override public int[] call() {
+          int[] next = new int[16];
+          int count = 0;
+          for (int index = begin; index < end; index++) {
+            int vertex = frontier[index];
+            int[] edges = forward.edges(vertex);
+            for (int edge = forward.rawDegree(vertex) - 1; edge >= 0; edge--) {
+              int target = edges[edge];
+              if (!isVisited(target) && claim(target)) {
+                if (count == next.length) {
+                  next = Arrays.copyOf(next, count * 2);
+                }
+                next[count++] = target;
+              }
+            }
+          }
+          return Arrays.copyOf(next, count);
+        }
+      });
+    }
+    return concat(invokeAll(tasks));
+  }
+
+  /**
+   * Expands the frontier by searching every unvisited vertex for an edge back into the frontier.
+   * Each task owns a word aligned range of vertices, so no vertex is claimed twice.
+   */
+  private int[] bottomUpStep(int[] frontier) {
+    final long[] inFrontier = new long[visited.length()];
+    for (int vertex : frontier) {
+      inFrontier[vertex >>> 6] |= 1L << vertex;
+    }
+
+    List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+    int chunk = (chunkSize(vertexCount) + 63) & ~63;
+    for (int start = 0; start < vertexCount; start += chunk) {
+      final int begin = start;
+      final int end = Math.min(vertexCount, start + chunk);
+      tasks.add(new Callable<int[]>() {
+
+        @Override public int[] call() {
+          int[] next = new int[16];
+          int count = 0;
+          for (int vertex = begin; vertex < end; vertex++) {
+            if (isVisited(vertex)) {
+              continue;
+            }
+            int[] edges = backward.edges(vertex);
+            for (int edge = backward.rawDegree(vertex) - 1; edge >= 0; edge--) {
+              int parent = edges[edge];
+              if ((inFrontier[parent >>> 6] & (1L << parent)) != 0) {
+                claim(vertex);
+                if (count == next.length) {
+                  next = Arrays.copyOf(next, count * 2);
+                }
+                next[count++] = vertex;
+                break;
+              }
+            }
+          }
+          return Arrays.copyOf(next, count);
+        }
+      });
+    }
+    return concat(invokeAll(tasks));
+  }
+
+  private boolean isVisited(int vertex) {
+    return (visited.get(vertex >>> 6) & (1L << vertex)) != 0;
+  }
+
+  /**
+   * Marks vertex visited. Returns false if another thread marked it first.
+   */
+  private boolean claim(int vertex) {
+    int word = vertex >>> 6;
+    long bit = 1L << vertex;
+    while (true) {
+      long value = visited.get(word);
+      if ((value & bit) != 0) {
+        return false;
+      }
+      if (visited.compareAndSet(word, value, value | bit)) {
+        return true;
+      }
+    }
+  }
+
+  private static int chunkSize(int count) {
+    int tasks = getThreads() * TASKS_PER_THREAD;
+    return Math.max(1024, (count + tasks - 1) / tasks);
+  }
+
+  private static synchronized int getThreads() {
+    return threads;
+  }
+
+  private static int[] concat(List<int[]> parts) {
+    int length = 0;
+    for (int[] part : parts) {
+      length += part.length;
+    }
+    int[] result = new int[length];
+    int offset = 0;
+    for (int[] part : parts) {
+      System.arraycopy(part, 0, result, offset, part.length);
+      offset += part.length;
+    }
+    return result;
+  }
+
+  private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+    List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      for (Future<T> future : getExecutor().invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * The shared pool of search threads. The threads are daemons so they never keep the program
+   * alive.
+   */
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+        @Override public Thread newThread(Runnable runnable) {
+          Thread result = new Thread(runnable, "ParallelBreadthFirstSearch");
+          result.setDaemon(true);
+          return result;
+        }
+      });
+    }
+    return executor;
+  }
+}
@@ -0,0 +1,391 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Splits an undirected weighted graph into a number of parts of roughly equal vertex weight while
+ * keeping the weight of the edges between parts small. Vertices are numbered 0 .. size - 1 and may
+ * be pinned to a part.
+ *
+ * <p>This is a multilevel partitioner. The graph is repeatedly coarsened by merging each vertex
+ * with the unmatched neighbor it has the heaviest edge to, the small coarsest graph is partitioned
+ * greedily, and the partition is then projected back through each level and refined by moving
+ * single vertices to the part they are most strongly connected to.
+ */
+public final class Partitioner {
+  // parts may exceed the average weight by this fraction
+  private static final double IMBALANCE = 0.05;
+  private static final int COARSEST_VERTICES_PER_PART = 16;
+  private static final int REFINEMENT_PASSES = 8;
+
+  private final int size;
+  private final int[] weights;
+  private final int[] pins;
+  private int[] sources = new int[16];
+  private int[] destinations = new int[16];
+  private int[] edgeWeights = new int[16];
+  private int edgeCount;
+
+  /**
+   * Creates a partitioner for a graph of size vertices, each with weight 1 and no edges.
+   */
+  public Partitioner(int size) {
+    this.size = size;
+    weights = new int[size];
+    Arrays.fill(weights, 1);
+    pins = new int[size];
+    Arrays.fill(pins, -1);
+  }
+
+  public void setWeight(int vertex, int weight) {
+    weights[vertex] = weight;
+  }
+
+  /**
+   * Forces vertex into part.
+   */
+  public void pin(int vertex, int part) {
+    pins[vertex] = part;
+  }
+
+  /**
+   * Adds an undirected edge. Edges added more than once between the same vertices have their
+   * weights summed.
+   */
+  public void addEdge(int first, int second, int weight) {
+    if (first == second) {
+      return;
+    }
+    if (edgeCount == sources.length) {
+      sources = Arrays.copyOf(sources, edgeCount * 2);
+      destinations = Arrays.copyOf(destinations, edgeCount * 2);
+      edgeWeights = Arrays.copyOf(edgeWeights, edgeCount * 2);
+    }
+    sources[edgeCount] = first;
+    destinations[edgeCount] = second;
+    edgeWeights[edgeCount++] = weight;
+  }
+
+  /**
+   * Returns the part from 0 to parts - 1 of every vertex.
+   */
+  public int[] partition(int parts) {
+    Level level = new Level(size, weights, pins, sources, destinations, edgeWeights, edgeCount);
+    long totalWeight = 0;
+    for (int weight : weights) {
+      totalWeight += weight;
+    }
+    long capacity = (long) Math.ceil(totalWeight * (1 + IMBALANCE) / parts);
+    int maximumVertexWeight = (int) Math.min(Integer.MAX_VALUE,
+        Math.max(1, totalWeight / (parts * COARSEST_VERTICES_PER_PART / 2)));
+    Random random = new Random(0);
+
+    // Coarsen until the graph is small or stops shrinking.
+    Level coarsest = level;
+    while (coarsest.size > parts * COARSEST_VERTICES_PER_PART) {
+      Level coarser = coarsest.coarsen(random, maximumVertexWeight);
+      if (coarser.size > coarsest.size * 0.95) {
+        break;
+      }
+      coarsest = coarser;
+    }
+
+    int[] result = coarsest.initialPartition(parts, capacity);
+    coarsest.refine(result, parts, capacity);
+    for (Level finer = coarsest.finer; finer != null; finer = finer.finer) {
+      int[] projected = new int[finer.size];
+      for (int vertex = 0; vertex < finer.size; vertex++) {
+        projected[vertex] = result[finer.coarseOf[vertex]];
+      }
+      result = projected;
+      finer.refine(result, parts, capacity);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the total weight of the edges between different parts.
+   */
+  public long cutWeight(int[] parts) {
+    long result = 0;
+    for (int edge = 0; edge < edgeCount; edge++) {
+      if (parts[sources[edge]] != parts[destinations[edge]]) {
+        result += edgeWeights[edge];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * One level of the multilevel scheme: a graph stored as arrays of edges leaving each vertex,
+   * with every undirected edge stored in both directions.
+   */
+  private static final class Level {
+    final int size;
+    final int[] weights;
+    final int[] pins;
+    final int[] edgeStart;
+    final int[] targets;
+    final int[] targetWeights;
+    // the next finer level, and the vertex of this level each of its vertices was merged into
+    Level finer;
+    int[] coarseOf;
+
+    /**
+     * Builds a level from a list of undirected edges, merging edges between the same vertices.
+     */
+    Level(int size, int[] weights, int[] pins, int[] sources, int[] destinations,
+        int[] edgeWeights, int edgeCount) {
+      this.size = size;
+      this.weights = weights;
+      this.pins = pins;
+      int[] degrees = new int[size + 1];
+      for (int edge = 0; edge < edgeCount; edge++) {
+        degrees[sources[edge] + 1]++;
+        degrees[destinations[edge] + 1]++;
+      }
+      for (int vertex = 0; vertex < size; vertex++) {
+        degrees[vertex + 1] += degrees[vertex];
+      }
+      int[] next = Arrays.copyOf(degrees, size);
+      int[] rawTargets = new int[degrees[size]];
+      int[] rawWeights = new int[degrees[size]];
+      for (int edge = 0; edge < edgeCount; edge++) {
+        int source = sources[edge];
+        int destination = destinations[edge];
+        rawTargets[next[source]] = destination;
+        rawWeights[next[source]++] = edgeWeights[edge];
+        rawTargets[next[destination]] = source;
+        rawWeights[next[destination]++] = edgeWeights[edge];
+      }
+
+      // Merge duplicate targets of each vertex, remembering where each target was last placed.
+      edgeStart = new int[size + 1];
+      int[] position = new int[size];
+      Arrays.fill(position, -1);
+      int count = 0;
+      for (int vertex = 0; vertex < size; vertex++) {
+        edgeStart[vertex] = count;
+        for (int index = degrees[vertex]; index < degrees[vertex + 1]; index++) {
+          int target = rawTargets[index];
+          if (position[target] >= edgeStart[vertex]) {
+            rawWeights[position[target]] += rawWeights[index];
+          } else {
+            position[target] = count;
+            rawTargets[count] = target;
+            rawWeights[count++] = rawWeights[index];
+          }
+        }
+      }
+      edgeStart[size] = count;
+      targets = Arrays.copyOf(rawTargets, count);
+      targetWeights = Arrays.copyOf(rawWeights, count);
+    }
+
+    /**
+     * Returns the next coarser level, matching each vertex with the unmatched neighbor it has the
+     * heaviest edge to. Vertices pinned to different parts are never matched, and merged vertices
+     * may not weigh more than maximumVertexWeight.
+     */
+    Level coarsen(Random random, int maximumVertexWeight) {
+      int[] order = new int[size];
+      for (int vertex = 0; vertex < size; vertex++) {
+        order[vertex] = vertex;
+      }
+      for (int index = size - 1; index > 0; index--) {
+        int other = random.nextInt(index + 1);
+        int swap = order[index];
+        order[index] = order[other];
+        order[other] = swap;
+      }
+
+      coarseOf = new int[size];
+      Arrays.fill(coarseOf, -1);
+      int coarseSize = 0;
+      for (int vertex : order) {
+        if (coarseOf[vertex] != -1) {
+          continue;
+        }
+        int match = -1;
+        int matchWeight = 0;
+        for (int index = edgeStart[vertex]; index < edgeStart[vertex + 1]; index++) {
+          int target = targets[index];
+          if (coarseOf[target] == -1 && targetWeights[index] > matchWeight
+              && (pins[vertex] < 0 || pins[target] < 0 || pins[vertex] == pins[target])
+              && (long) weights[vertex] + weights[target] <= maximumVertexWeight) {
+            match = target;
+            matchWeight = targetWeights[index];
+          }
+        }
+        coarseOf[vertex] = coarseSize;
+        if (match != -1) {
+          coarseOf[match] = coarseSize;
+        }
+        coarseSize++;
+      }
+
+      int[] coarseWeights = new int[coarseSize];
+      int[] coarsePins = new int[coarseSize];
+      Arrays.fill(coarsePins, -1);
+      for (int vertex = 0; vertex < size; vertex++) {
+        coarseWeights[coarseOf[vertex]] += weights[vertex];
+        if (pins[vertex] >= 0) {
+          coarsePins[coarseOf[vertex]] = pins[vertex];
+        }
+      }
+      // Each undirected edge is stored twice, so keep only the copy leaving the lower vertex.
+      int[] sources = new int[targets.length / 2];
+      int[] destinations = new int[targets.length / 2];
+      int[] edgeWeights = new int[targets.length / 2];
+      int edgeCount = 0;
+      for (int vertex = 0; vertex < size; vertex++) {
+        for (int index = edgeStart[vertex]; index < edgeStart[vertex + 1]; index++) {
+          int target = targets[index];
+          if (vertex < target && coarseOf[vertex] != coarseOf[target]) {
+            sources[edgeCount] = coarseOf[vertex];
+            destinations[edgeCount] = coarseOf[target];
+            edgeWeights[edgeCount++] = targetWeights[index];
+          }
+        }
+      }
+      Level result = new Level(coarseSize, coarseWeights, coarsePins, sources, destinations,
+          edgeWeights, edgeCount);
+      result.finer = this;
+      return result;
+    }
+
+    /**
+     * Returns a partition which puts pinned vertices in their parts, then each other vertex,
+     * heaviest first, in the part with room it is most strongly connected to.
+     */
+    int[] initialPartition(int parts, long capacity) {
+      int[] result = new int[size];
+      Arrays.fill(result, -1);
+      long[] partWeights = new long[parts];
+      for (int vertex = 0; vertex < size; vertex++) {
+        if (pins[vertex] >= 0) {
+          result[vertex] = pins[vertex];
+          partWeights[pins[vertex]] += weights[vertex];
+        }
+      }
+      Integer[] order = new Integer[size];
+      for (int vertex = 0; vertex < size; vertex++) {
+        order[vertex] = vertex;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+
+        @Override public int compare(Integer left, Integer right) {
+          return weights[right] != weights[left] ? weights[right] - weights[left] : left - right;
+        }
+      });
+      long[] connection = new long[parts];
+      for (int vertex : order) {
+        if (result[vertex] >= 0) {
+          continue;
+        }
+        Arrays.fill(connection, 0);
+        for (int index = edgeStart[vertex]; index < edgeStart[vertex + 1]; index++) {
+          int part = result[targets[index]];
+          if (part >= 0) {
+            connection[part] += targetWeights[index];
+          }
+        }
+        int best = 0;
+        for (int part = 1; part < parts; part++) {
+          if (isBetter(part, best, connection, partWeights, weights[vertex], capacity)) {
+            best = part;
+          }
+        }
+        result[vertex] = best;
+        partWeights[best] += weights[vertex];
+      }
+      return result;
+    }
+
+    /**
+     * Is part a better home than best for a vertex of weight with the given connections: it fits
+     * and best does not, or both fit and it is more connected, or it is equally connected and
+     * lighter.
+     */
+    private static boolean isBetter(int part, int best, long[] connection, long[] partWeights,
+        int weight, long capacity) {
+      boolean partFits = partWeights[part] + weight <= capacity;
+      boolean bestFits = partWeights[best] + weight <= capacity;
+      if (partFits != bestFits) {
+        return partFits;
+      }
+      if (connection[part] != connection[best]) {
+        return connection[part] > connection[best];
+      }
+      return partWeights[part] < partWeights[best];
+    }
+
+    /**
+     * Improves partition by moving unpinned vertices to the part they are most strongly connected
+     * to when that reduces the cut without overfilling the part, or when their own part is
+     * overfull.
+     */
+    void refine(int[] partition, int parts, long capacity) {
+      long[] partWeights = new long[parts];
+      for (int vertex = 0; vertex < size; vertex++) {
+        partWeights[partition[vertex]] += weights[vertex];
+      }
+      long[] connection = new long[parts];
+      for (int pass = 0; pass < REFINEMENT_PASSES; pass++) {
+        boolean moved = false;
+        for (int vertex = 0; vertex < size; vertex++) {
+          if (pins[vertex] >= 0) {
+            continue;
+          }
+          int current = partition[vertex];
+          Arrays.fill(connection, 0);
+          for (int index = edgeStart[vertex]; index < edgeStart[vertex + 1]; index++) {
+            connection[partition[targets[index]]] += targetWeights[index];
+          }
+          int weight = weights[vertex];
+          int best = -1;
+          for (int part = 0; part < parts; part++) {
+            if (part != current && partWeights[part] + weight <= capacity
+                && (best == -1 || connection[part] > connection[best]
+                    || (connection[part] == connection[best]
+                        && partWeights[part] < partWeights[best]))) {
+              best = part;
+            }
+          }
+          if (best == -1) {
+            continue;
+          }
+          boolean overfull = partWeights[current] > capacity;
+          if (connection[best] > connection[current] || overfull
+              || (connection[best] == connection[current]
+                  && partWeights[best] + weight < partWeights[current])) {
+            partition[vertex] = best;
+            partWeights[current] -= weight;
+            partWeights[best] += weight;
+            moved = true;
+          }
+        }
+        if (!moved) {
+          break;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/* Copyright 2010 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package codecleaver.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Answers whether one component of a condensed graph can reach another without traversing the
+ * whole graph. Each component is given several interval labels, one per randomized depth first
+ * traversal of the condensed graph. If a component can reach another then every label of the
+ * target is contained in the matching label of the source, so most negative queries are answered
+ * by comparing labels. Queries the labels cannot rule out fall back to a depth first search
+ * which is pruned by the same test.
+ */
+final class ReachabilityIndex {
+  private static final int LABEL_COUNT = 2;
+  private static final int MAX_LABELLED_TARGETS = 64;
+
+  private final Condensation condensation;
+  // low[i][c] and high[i][c] are the bounds of the i-th label of component c
+  private final int[][] low;
+  private final int[][] high;
+  // scratch state for reaches, which grows with the largest search and is cleared after each one
+  // by its touched list, so a query costs in proportion to the components it visits
+  private final BitSet visited = new BitSet();
+  private final BitSet isTarget = new BitSet();
+  private int[] stack = new int[16];
+  private int[] touched = new int[16];
+  private int touchedCount;
+
+  public ReachabilityIndex(Condensation condensation) {
+    this.condensation = condensation;
+    int count = condensation.componentCount();
+    low = new int[LABEL_COUNT][count];
+    high = new int[LABEL_COUNT][count];
+    Random random = new Random(count);
+    for (int label = 0; label < LABEL_COUNT; label++) {
+      computeLabel(random, low[label], high[label]);
+    }
+  }
+
+  /**
+   * Assigns each component its post order rank in high, and the lowest rank of any component it
+   * reaches in low. Children are visited starting at a random edge.
+   */
+  private void computeLabel(Random random, int[] low, int[] high) {
+    Adjacency edges = condensation.getOutEdges();
+    int count = edges.size();
+    BitSet visited = new BitSet(count);
+    int[] callStack = new int[count];
+    int[] firstEdge = new int[count];
+    int[] edgesVisited = new int[count];
+    int rank = 0;
+
+    // components are numbered in reverse topological order, so start from the highest
+    for (int root = count - 1; root >= 0; root--) {
+      if (visited.get(root)) {
+        continue;
+      }
+      int depth = 0;
+      visited.set(root);
+      callStack[depth] = root;
+      firstEdge[depth] = randomEdge(random, edges, root);
+      edgesVisited[depth++] = 0;
+      low[root] = Integer.MAX_VALUE;
+
+      while (depth > 0) {
+        int component = callStack[depth - 1];
+        int degree = edges.rawDegree(component);
+        if (edgesVisited[depth - 1] < degree) {
+          int edge = (firstEdge[depth - 1] + edgesVisited[depth - 1]++) % degree;
+          int child = edges.edges(component)[edge];
+          if (!visited.get(child)) {
+            visited.set(child);
+            low[child] = Integer.MAX_VALUE;
+            callStack[depth] = child;
+            firstEdge[depth] = randomEdge(random, edges, child);
+            edgesVisited[depth++] = 0;
+          } else {
+            low[component] = Math.min(low[component], low[child]);
+          }
+          continue;
+        }
+
+        depth--;
+        high[component] = rank++;
+        low[component] = Math.min(low[component], high[component]);
+        if (depth > 0) {
+          int parent = callStack[depth - 1];
+          low[parent] = Math.min(low[parent], low[component]);
+        }
+      }
+    }
+  }
+
+  private static int randomEdge(Random random, Adjacency edges, int component) {
+    int degree = edges.rawDegree(component);
+    return degree == 0 ? 0 : random.nextInt(degree);
+  }
+
+  /**
+   * Returns false if source certainly cannot reach target. Returns true if it may.
+   */
+  private boolean mayReach(int source, int target) {
+    // edges only go from higher to lower numbered components
+    if (source < target) {
+      return false;
+    }
+    for (int label = 0; label < LABEL_COUNT; label++) {
+      if (low[label][target] < low[label][source] || high[label][target] > high[label][source]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if any component in sources can reach a component in targets by zero or more
+   * edges.
+   */
+  public synchronized boolean reaches(int[] sources, int[] targets) {
+    if (sources.length == 0 || targets.length == 0) {
+      return false;
+    }
+    try {
+      return search(sources, targets);
+    } finally {
+      for (int target : targets) {
+        isTarget.clear(target);
+      }
+      for (int index = 0; index < touchedCount; index++) {
+        visited.clear(touched[index]);
+      }
+      touchedCount = 0;
+    }
+  }
+
+  private boolean search(int[] sources, int[] targets) {
+    int[] distinctTargets = new int[targets.length];
+    int targetCount = 0;
+    int minTarget = Integer.MAX_VALUE;
+    for (int target : targets) {
+      if (!isTarget.get(target)) {
+        isTarget.set(target);
+        distinctTargets[targetCount++] = target;
+        minTarget = Math.min(minTarget, target);
+      }
+    }
+    // with many targets comparing labels costs more than it saves
+    int[] labelled = targetCount <= MAX_LABELLED_TARGETS
+        ? Arrays.copyOf(distinctTargets, targetCount) : null;
+
+    int size = 0;
+    for (int source : sources) {
+      size = push(source, size);
+    }
+    Adjacency edges = condensation.getOutEdges();
+    while (size > 0) {
+      int component = stack[--size];
+      if (isTarget.get(component)) {
+        return true;
+      }
+      if (!mayReachAny(component, minTarget, labelled)) {
+        continue;
+      }
+      int[] children = edges.edges(component);
+      for (int index = edges.rawDegree(component) - 1; index >= 0; index--) {
+        size = push(children[index], size);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Pushes component on the stack of size entries if it has not been visited. Returns the new
+   * size of the stack.
+   */
+  private int push(int component, int size) {
+    if (visited.get(component)) {
+      return size;
+    }
+    visited.set(component);
+    if (touchedCount == touched.length) {
+      touched = Arrays.copyOf(touched, touchedCount * 2);
+    }
+    touched[touchedCount++] = component;
+    if (size == stack.length) {
+      stack = Arrays.copyOf(stack, size * 2);
+    }
+    stack[size] = component;
+    return size + 1;
+  }
+
+  private boolean mayReachAny(int component, int minTarget, int[] targets) {
+    if (component < minTarget) {
+      return false;
+    }
+    if (targets == null) {
+      return true;
+    }
+    for (int target : targets) {
+      if (mayReach(component, target)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,13 @@
+package a;
+
+import b.Helper;
+
+public class Outer {
+  public int size() {
+    return base() + new Helper().count(this);
+  }
+
+  public int base() {
+    return 1;
+  }
+}
@@ -0,0 +1,13 @@
+package b;
+
+import a.Outer;
+
+public class Helper {
+  public int count(Outer outer) {
+    return outer.base() + 1;
+  }
+
+  public int twice(Outer outer) {
+    return count(outer) * 2;
+  }
+}
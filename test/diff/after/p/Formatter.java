@@ -0,0 +1,13 @@
+package p;
+
+class Formatter {
+  private final String greeting;
+
+  Formatter(String greeting) {
+    this.greeting = greeting;
+  }
+
+  String format(String name) {
+    return greeting.concat(", ").concat(name);
+  }
+}
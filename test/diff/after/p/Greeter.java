@@ -0,0 +1,13 @@
+package p;
+
+public class Greeter {
+  private final Formatter formatter;
+
+  public Greeter(String greeting) {
+    this.formatter = new Formatter(greeting);
+  }
+
+  public String greet(String name) {
+    return formatter.format(name);
+  }
+}
@@ -0,0 +1,17 @@
+package p;
+
+public class Greeter {
+  private final String greeting;
+
+  public Greeter(String greeting) {
+    this.greeting = greeting;
+  }
+
+  public String greet(String name) {
+    return greeting + ", " + name;
+  }
+
+  public String greetAll(String first, String second) {
+    return greet(first) + " " + greet(second);
+  }
+}